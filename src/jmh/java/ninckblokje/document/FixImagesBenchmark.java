@@ -0,0 +1,133 @@
+package ninckblokje.document;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.w3c.dom.Document;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class FixImagesBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int pictures;
+
+    @Param({"10"})
+    public int brokenEmbedPercentage;
+
+    @Param({"10"})
+    public int orphanMediaPercentage;
+
+    private Path root;
+    private Path docx;
+    private DirectoryPackage directoryPackage;
+    private ZipPackage zipPackage;
+    private Document doc;
+    private Document relDoc;
+    private List<Path> missingImages;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        int brokenEmbeds = pictures * brokenEmbedPercentage / 100;
+        SyntheticDocumentGenerator generator = new SyntheticDocumentGenerator(
+                pictures, brokenEmbeds, pictures * orphanMediaPercentage / 100, Math.max(1, brokenEmbeds / 5));
+
+        root = Files.createTempDirectory("fix-images-benchmark");
+        generator.writePackage(root.resolve("working"));
+        generator.writeMissingImages(root.resolve("missingImages"));
+        docx = root.resolve("synthetic.docx");
+        generator.writeDocx(docx);
+
+        directoryPackage = new DirectoryPackage(root.resolve("working"));
+        zipPackage = new ZipPackage(docx);
+        doc = directoryPackage.parsePart(DocumentPackage.DOCUMENT_PART);
+        relDoc = directoryPackage.parsePart(DocumentPackage.RELATIONS_PART);
+        try (Stream<Path> paths = Files.list(root.resolve("missingImages"))) {
+            missingImages = paths.sorted().collect(Collectors.toList());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        zipPackage.close();
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public List<Graphic> parseGraphicsDom() throws Exception {
+        return FixImages.parseGraphics(doc);
+    }
+
+    @Benchmark
+    public List<Graphic> parseDocumentAndGraphicsDom() throws Exception {
+        return FixImages.parseGraphics(directoryPackage.parsePart(DocumentPackage.DOCUMENT_PART));
+    }
+
+    @Benchmark
+    public DocumentScan scanDocumentStreaming() throws Exception {
+        try (InputStream in = directoryPackage.openPart(DocumentPackage.DOCUMENT_PART)) {
+            return DocumentScanner.scan(in);
+        }
+    }
+
+    @Benchmark
+    public Object parseRelations() throws Exception {
+        return FixImages.parseRelations(relDoc);
+    }
+
+    @Benchmark
+    public List<String> parseMediaFilesDirectory() throws Exception {
+        return FixImages.parseMediaFiles(directoryPackage);
+    }
+
+    @Benchmark
+    public List<String> parseMediaFilesZip() throws Exception {
+        return FixImages.parseMediaFiles(zipPackage);
+    }
+
+    @Benchmark
+    public void imageMissingCountAndUpdateGraphics(MutableDocument mutableDocument, Blackhole blackhole) {
+        BlipIndex blipIndex = BlipIndex.build(mutableDocument.doc, SyntheticDocumentGenerator.BROKEN_RELATION_ID);
+        RIdWalker rIdWalker = new RIdWalker(new RId(SyntheticDocumentGenerator.FIRST_RELATION_ID + pictures));
+
+        for (Path missingImage : missingImages) {
+            int count = FixImages.imageMissingCount(blipIndex, missingImage);
+            for (int i = 0; i < count; i++) {
+                FixImages.updateGraphics(blipIndex, rIdWalker.next(), missingImage);
+            }
+            blackhole.consume(count);
+        }
+    }
+
+    @Benchmark
+    public void saveDocument() throws Exception {
+        FixImages.saveDocument(doc, OutputStream.nullOutputStream());
+    }
+
+    @State(Scope.Thread)
+    public static class MutableDocument {
+
+        private Document doc;
+
+        @Setup(Level.Invocation)
+        public void setUp(FixImagesBenchmark benchmark) {
+            doc = (Document) benchmark.doc.cloneNode(true);
+        }
+    }
+}
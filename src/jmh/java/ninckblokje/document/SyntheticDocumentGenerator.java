@@ -0,0 +1,183 @@
+package ninckblokje.document;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+class SyntheticDocumentGenerator {
+
+    static final int FIRST_RELATION_ID = 100;
+    static final String BROKEN_RELATION_ID = "rId7";
+
+    private static final byte[] MEDIA_BYTES = {
+            (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n', 0, 0, 0, 13, 'I', 'H', 'D', 'R', 0, 0, 0, 1, 0, 0, 0, 1, 8, 2, 0, 0, 0
+    };
+
+    private final int pictures;
+    private final int brokenEmbeds;
+    private final int orphanMedia;
+    private final int distinctMissingImages;
+
+    public SyntheticDocumentGenerator(int pictures, int brokenEmbeds, int orphanMedia, int distinctMissingImages) {
+        this.pictures = pictures;
+        this.brokenEmbeds = brokenEmbeds;
+        this.orphanMedia = orphanMedia;
+        this.distinctMissingImages = distinctMissingImages;
+    }
+
+    public static String missingImageName(int index) {
+        return String.format("missing%d.png", index);
+    }
+
+    public void writePackage(Path root) throws IOException {
+        Files.createDirectories(root.resolve("word/_rels"));
+        Files.createDirectories(root.resolve("word/media"));
+        Files.createDirectories(root.resolve("_rels"));
+
+        try (Writer writer = Files.newBufferedWriter(root.resolve(DocumentPackage.DOCUMENT_PART), StandardCharsets.UTF_8)) {
+            writeDocument(writer);
+        }
+        try (Writer writer = Files.newBufferedWriter(root.resolve(DocumentPackage.RELATIONS_PART), StandardCharsets.UTF_8)) {
+            writeRelations(writer);
+        }
+        try (Writer writer = Files.newBufferedWriter(root.resolve("[Content_Types].xml"), StandardCharsets.UTF_8)) {
+            writeContentTypes(writer);
+        }
+        try (Writer writer = Files.newBufferedWriter(root.resolve("_rels/.rels"), StandardCharsets.UTF_8)) {
+            writePackageRelations(writer);
+        }
+        for (int i = 0; i < mediaCount(); i++) {
+            Files.write(root.resolve(DocumentPackage.MEDIA_FOLDER + mediaName(i)), MEDIA_BYTES);
+        }
+    }
+
+    public void writeDocx(Path docx) throws IOException {
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(docx))) {
+            out.putNextEntry(new ZipEntry("[Content_Types].xml"));
+            writeContentTypes(unclosable(out));
+            out.putNextEntry(new ZipEntry("_rels/.rels"));
+            writePackageRelations(unclosable(out));
+            out.putNextEntry(new ZipEntry(DocumentPackage.DOCUMENT_PART));
+            writeDocument(unclosable(out));
+            out.putNextEntry(new ZipEntry(DocumentPackage.RELATIONS_PART));
+            writeRelations(unclosable(out));
+            for (int i = 0; i < mediaCount(); i++) {
+                out.putNextEntry(new ZipEntry(DocumentPackage.MEDIA_FOLDER + mediaName(i)));
+                out.write(MEDIA_BYTES);
+            }
+        }
+    }
+
+    public void writeMissingImages(Path folder) throws IOException {
+        Files.createDirectories(folder);
+        for (int i = 0; i < distinctMissingImages; i++) {
+            Files.write(folder.resolve(missingImageName(i)), MEDIA_BYTES);
+        }
+    }
+
+    public void writeDocument(Writer writer) throws IOException {
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n");
+        writer.write("<w:document xmlns:w=\"http://schemas.openxmlformats.org/wordprocessingml/2006/main\""
+                + " xmlns:r=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships\""
+                + " xmlns:wp=\"http://schemas.openxmlformats.org/drawingml/2006/wordprocessingDrawing\""
+                + " xmlns:a=\"http://schemas.openxmlformats.org/drawingml/2006/main\""
+                + " xmlns:pic=\"http://schemas.openxmlformats.org/drawingml/2006/picture\"><w:body>");
+
+        int brokenEvery = brokenEmbeds == 0 ? 0 : Math.max(1, pictures / brokenEmbeds);
+        int broken = 0;
+        for (int i = 0; i < pictures; i++) {
+            writer.write("<w:p><w:r><w:t xml:space=\"preserve\">Paragraph ");
+            writer.write(Integer.toString(i));
+            writer.write(" with some text before the picture</w:t></w:r></w:p>");
+
+            String name;
+            String relationId;
+            if (brokenEvery > 0 && broken < brokenEmbeds && i % brokenEvery == 0) {
+                name = missingImageName(broken % Math.max(1, distinctMissingImages));
+                relationId = BROKEN_RELATION_ID;
+                broken++;
+            } else {
+                name = String.format("Picture %d", i);
+                relationId = relationId(i);
+            }
+
+            writer.write("<w:p><w:r><w:drawing><wp:inline><wp:extent cx=\"1905000\" cy=\"1270000\"/><wp:docPr id=\"");
+            writer.write(Integer.toString(i + 1));
+            writer.write("\" name=\"Picture\"/><a:graphic><a:graphicData uri=\"http://schemas.openxmlformats.org/drawingml/2006/picture\">");
+            writer.write("<pic:pic><pic:nvPicPr><pic:cNvPr id=\"");
+            writer.write(Integer.toString(i));
+            writer.write("\" name=\"");
+            writer.write(name);
+            writer.write("\"/><pic:cNvPicPr/></pic:nvPicPr><pic:blipFill><a:blip r:embed=\"");
+            writer.write(relationId);
+            writer.write("\"/><a:stretch><a:fillRect/></a:stretch></pic:blipFill>");
+            writer.write("<pic:spPr><a:xfrm><a:off x=\"0\" y=\"0\"/><a:ext cx=\"1905000\" cy=\"1270000\"/></a:xfrm><a:prstGeom prst=\"rect\"/></pic:spPr>");
+            writer.write("</pic:pic></a:graphicData></a:graphic></wp:inline></w:drawing></w:r></w:p>");
+        }
+
+        writer.write("<w:sectPr/></w:body></w:document>");
+        writer.flush();
+    }
+
+    public void writeRelations(Writer writer) throws IOException {
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n");
+        writer.write("<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">");
+        writer.write("<Relationship Id=\"rId1\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/styles\" Target=\"styles.xml\"/>");
+        for (int i = 0; i < pictures; i++) {
+            writer.write("<Relationship Id=\"");
+            writer.write(relationId(i));
+            writer.write("\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/image\" Target=\"media/");
+            writer.write(mediaName(i));
+            writer.write("\"/>");
+        }
+        writer.write("</Relationships>");
+        writer.flush();
+    }
+
+    private void writeContentTypes(Writer writer) throws IOException {
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n");
+        writer.write("<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">"
+                + "<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>"
+                + "<Default Extension=\"xml\" ContentType=\"application/xml\"/>"
+                + "<Default Extension=\"png\" ContentType=\"image/png\"/>"
+                + "<Override PartName=\"/word/document.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.wordprocessingml.document.main+xml\"/>"
+                + "</Types>");
+        writer.flush();
+    }
+
+    private void writePackageRelations(Writer writer) throws IOException {
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n");
+        writer.write("<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+                + "<Relationship Id=\"rId1\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/officeDocument\" Target=\"word/document.xml\"/>"
+                + "</Relationships>");
+        writer.flush();
+    }
+
+    private int mediaCount() {
+        return pictures + orphanMedia;
+    }
+
+    private static String relationId(int index) {
+        return String.format("rId%d", FIRST_RELATION_ID + index);
+    }
+
+    private static String mediaName(int index) {
+        return String.format("image%d.png", FIRST_RELATION_ID + index);
+    }
+
+    private static Writer unclosable(OutputStream out) {
+        return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8) {
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        });
+    }
+}
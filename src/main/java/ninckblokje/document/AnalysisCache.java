@@ -0,0 +1,218 @@
+package ninckblokje.document;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+class AnalysisCache {
+
+    static final String CACHE_HITS = "analysisCacheHits";
+    static final String CACHE_MISSES = "analysisCacheMisses";
+
+    private static final int MAGIC = 0x46494143;
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".bin";
+
+    private final Path folder;
+    private final long maxBytes;
+    private long size = -1;
+
+    public AnalysisCache(Path folder, long maxBytes) {
+        this.folder = folder;
+        this.maxBytes = maxBytes;
+    }
+
+    public String key(DocumentPackage documentPackage, String part, String relationsPart, String mode) throws IOException {
+        String partDigest;
+        try (InputStream in = documentPackage.openPart(part)) {
+            partDigest = MediaDigestIndex.digest(in);
+        }
+
+        String relationsDigest;
+        try (InputStream in = documentPackage.openPart(relationsPart)) {
+            relationsDigest = MediaDigestIndex.digest(in);
+        }
+
+        // the part name is in the key because relation ids of other parts are qualified with it
+        return MediaDigestIndex.digest(new ByteArrayInputStream(String.join("\n", String.valueOf(VERSION), mode, part, partDigest, relationsDigest)
+                .getBytes(StandardCharsets.UTF_8)));
+    }
+
+    public PartScan load(String key, String part, String relationsPart) {
+        Path entry = folder.resolve(key + SUFFIX);
+        if (!Files.isRegularFile(entry)) {
+            RunMetrics.get().increment(CACHE_MISSES);
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(entry), 64 * 1024))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unknown cache entry format");
+            }
+
+            String[] strings = new String[in.readInt()];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = in.readUTF();
+            }
+
+            List<String> embeddedRelationIds = readStrings(in, strings);
+            int graphicCount = in.readInt();
+            List<Graphic> graphics = new ArrayList<>(graphicCount);
+            for (int i = 0; i < graphicCount; i++) {
+                graphics.add(new Graphic(in.readInt(), readString(in, strings), readString(in, strings), in.readLong(), in.readLong()));
+            }
+
+            int relationCount = in.readInt();
+            Map<String, String> relations = new LinkedHashMap<>();
+            for (int i = 0; i < relationCount; i++) {
+                relations.put(readString(in, strings), readString(in, strings));
+            }
+            List<String> nullTargetRelationIds = readStrings(in, strings);
+
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            RunMetrics.get().increment(CACHE_HITS);
+            FixImages.debug(String.format("%s loaded from analysis cache", part));
+            return new PartScan(part, relationsPart, new DocumentScan(embeddedRelationIds, graphics), relations, nullTargetRelationIds);
+        } catch (IOException ex) {
+            System.out.println(String.format("Ignoring analysis cache entry %s: %s", entry.getFileName(), ex.getMessage()));
+            delete(entry);
+            RunMetrics.get().increment(CACHE_MISSES);
+            return null;
+        }
+    }
+
+    public void store(String key, PartScan partScan) throws IOException {
+        // relation ids and file names repeat a lot, so the body refers to a table of distinct strings
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(body)) {
+            writeStrings(out, strings, partScan.getScan().getEmbeddedRelationIds());
+            out.writeInt(partScan.getScan().getGraphics().size());
+            for (Graphic graphic : partScan.getScan().getGraphics()) {
+                out.writeInt(graphic.getIndex());
+                writeString(out, strings, graphic.getRelationId());
+                writeString(out, strings, graphic.getFilename());
+                out.writeLong(graphic.getExtentCx());
+                out.writeLong(graphic.getExtentCy());
+            }
+
+            out.writeInt(partScan.getRelations().size());
+            for (Map.Entry<String, String> relation : partScan.getRelations().entrySet()) {
+                writeString(out, strings, relation.getKey());
+                writeString(out, strings, relation.getValue());
+            }
+            writeStrings(out, strings, partScan.getNullTargetRelationIds());
+        }
+
+        Files.createDirectories(folder);
+        Path tempFile = Files.createTempFile(folder, key, ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(strings.size());
+            for (String string : strings.keySet()) {
+                out.writeUTF(string);
+            }
+            body.writeTo(out);
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(tempFile);
+            throw ex;
+        }
+
+        Path entry = folder.resolve(key + SUFFIX);
+        long storedBytes = Files.size(tempFile);
+        synchronized (this) {
+            long replacedBytes = Files.isRegularFile(entry) ? Files.size(entry) : 0;
+            Files.move(tempFile, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (size < 0) {
+                size = sizeOnDisk();
+            } else {
+                size += storedBytes - replacedBytes;
+            }
+            // entries removed outside of store only leave the total too high, evict lists the folder and corrects it
+            if (size > maxBytes) {
+                evict();
+            }
+        }
+    }
+
+    synchronized void evict() throws IOException {
+        List<Path> entries = listEntries();
+        Map<Path, FileTime> lastUsed = new HashMap<>();
+        size = 0;
+        for (Path entry : entries) {
+            lastUsed.put(entry, Files.getLastModifiedTime(entry));
+            size += Files.size(entry);
+        }
+        if (size <= maxBytes) {
+            return;
+        }
+
+        entries.sort(Comparator.comparing(lastUsed::get));
+        int evicted = 0;
+        for (Path entry : entries) {
+            if (size <= maxBytes) {
+                break;
+            }
+            size -= Files.size(entry);
+            delete(entry);
+            evicted++;
+        }
+        FixImages.debug(String.format("Evicted %d analysis cache entries, %d bytes left", evicted, size));
+    }
+
+    private long sizeOnDisk() throws IOException {
+        long total = 0;
+        for (Path entry : listEntries()) {
+            total += Files.size(entry);
+        }
+        return total;
+    }
+
+    private List<Path> listEntries() throws IOException {
+        try (Stream<Path> paths = Files.list(folder)) {
+            return paths.filter(path -> path.getFileName().toString().endsWith(SUFFIX))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static void delete(Path entry) {
+        try {
+            Files.deleteIfExists(entry);
+        } catch (IOException ex) {
+            System.out.println(String.format("Could not delete analysis cache entry %s: %s", entry.getFileName(), ex.getMessage()));
+        }
+    }
+
+    private static List<String> readStrings(DataInputStream in, String[] strings) throws IOException {
+        int count = in.readInt();
+        List<String> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(readString(in, strings));
+        }
+        return values;
+    }
+
+    private static void writeStrings(DataOutputStream out, Map<String, Integer> strings, List<String> values) throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) {
+            writeString(out, strings, value);
+        }
+    }
+
+    private static String readString(DataInputStream in, String[] strings) throws IOException {
+        int index = in.readInt();
+        if (index >= strings.length) {
+            throw new IOException(String.format("String %d is not in the table", index));
+        }
+        return index < 0 ? null : strings[index];
+    }
+
+    private static void writeString(DataOutputStream out, Map<String, Integer> strings, String value) throws IOException {
+        out.writeInt(value == null ? -1 : strings.computeIfAbsent(value, key -> strings.size()));
+    }
+}
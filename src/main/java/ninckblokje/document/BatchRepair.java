@@ -0,0 +1,140 @@
+package ninckblokje.document;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+class BatchRepair {
+
+    static List<Path> collectDocuments(List<String> inputs) throws IOException {
+        List<Path> documents = new ArrayList<>();
+
+        for (String input : inputs) {
+            Path path = Path.of(input);
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> paths = Files.list(path)) {
+                    paths.filter(BatchRepair::isDocx)
+                            .sorted()
+                            .forEach(documents::add);
+                }
+            } else if (isDocx(path)) {
+                documents.add(path);
+            } else {
+                Files.readAllLines(path).stream()
+                        .map(String::trim)
+                        .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                        .map(Path::of)
+                        .forEach(documents::add);
+            }
+        }
+
+        System.out.println(String.format("%d documents found for batch", documents.size()));
+        return documents;
+    }
+
+    static List<DocumentReport> run(List<Path> documents, RepairOptions options, Path outputFolder, int threads) throws IOException, InterruptedException {
+        Map<Path, Path> targets = outputFolder == null ? Collections.emptyMap() : getTargets(documents, outputFolder);
+        if (outputFolder != null) {
+            Files.createDirectories(outputFolder);
+        }
+
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        try {
+            List<Callable<DocumentReport>> tasks = documents.stream()
+                    .map(document -> (Callable<DocumentReport>) () -> process(document, options, targets.get(document)))
+                    .collect(Collectors.toList());
+
+            List<DocumentReport> reports = new ArrayList<>();
+            for (Future<DocumentReport> future : executorService.invokeAll(tasks)) {
+                try {
+                    reports.add(future.get());
+                } catch (ExecutionException ex) {
+                    throw new IllegalStateException(ex.getCause());
+                }
+            }
+
+            printSummary(reports);
+            return reports;
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    static Map<Path, Path> getTargets(List<Path> documents, Path outputFolder) {
+        // every check happens before the first document is touched
+        Path base = null;
+        for (Path document : documents) {
+            if (Files.isDirectory(document)) {
+                throw new IllegalArgumentException(String.format("Document folder %s is repaired in place and cannot be written to %s", document, outputFolder));
+            }
+
+            Path parent = document.toAbsolutePath().normalize().getParent();
+            if (base == null) {
+                base = parent;
+            }
+            while (base != null && !parent.startsWith(base)) {
+                base = base.getParent();
+            }
+            if (base == null) {
+                throw new IllegalArgumentException(String.format("Document %s does not share a folder with the other documents", document));
+            }
+        }
+
+        // documents keep their path below the common folder, so equal file names in different folders do not collide
+        Map<Path, Path> targets = new HashMap<>();
+        Set<Path> used = new HashSet<>();
+        for (Path document : documents) {
+            Path target = outputFolder.resolve(base.relativize(document.toAbsolutePath().normalize()).toString());
+            if (!used.add(target)) {
+                throw new IllegalArgumentException(String.format("Document %s is listed more than once", document));
+            }
+            targets.put(document, target);
+        }
+        return targets;
+    }
+
+    static DocumentReport process(Path document, RepairOptions options, Path target) {
+        try (DocumentPackage documentPackage = DocumentPackage.open(document)) {
+            DocumentReport report = FixImages.analyze(documentPackage, true, options);
+
+            if (target != null) {
+                Files.createDirectories(target.getParent());
+                report.setImagesAdded(FixImages.repair(documentPackage, options, target));
+            }
+            return report;
+        } catch (Exception ex) {
+            DocumentReport report = new DocumentReport(document.getFileName().toString());
+            report.setError(ex.toString());
+            return report;
+        }
+    }
+
+    static void printSummary(List<DocumentReport> reports) {
+        System.out.println("Batch summary");
+        reports.forEach(System.out::println);
+
+        System.out.println(String.format("%d documents, %d failed, %d found media files, %d not found media files, %d missing media files, %d erroneous embedded relation ids, %d NULL targets, %d images added",
+                reports.size(),
+                reports.stream().filter(DocumentReport::isFailed).count(),
+                reports.stream().mapToInt(DocumentReport::getFoundMediaFiles).sum(),
+                reports.stream().mapToInt(DocumentReport::getNotFoundMediaFiles).sum(),
+                reports.stream().mapToInt(DocumentReport::getMissingMediaFiles).sum(),
+                reports.stream().mapToInt(report -> report.getErroneousRelationIds().size()).sum(),
+                reports.stream().mapToInt(DocumentReport::getNullTargetRelations).sum(),
+                reports.stream().mapToInt(DocumentReport::getImagesAdded).sum()));
+    }
+
+    private static boolean isDocx(Path path) {
+        return Files.isRegularFile(path) && path.getFileName().toString().toLowerCase().endsWith(".docx");
+    }
+}
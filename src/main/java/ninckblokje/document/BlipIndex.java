@@ -0,0 +1,110 @@
+package ninckblokje.document;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import java.util.*;
+
+class BlipIndex {
+
+    private final String relationId;
+    private final Map<String, Deque<IndexedBlip>> blips = new HashMap<>();
+
+    private BlipIndex(String relationId) {
+        this.relationId = relationId;
+    }
+
+    static BlipIndex build(Document doc, String relationId) {
+        BlipIndex index = new BlipIndex(relationId);
+
+        NodeList graphicNodeList = doc.getElementsByTagNameNS(DocumentScanner.DRAWINGML_NS, "graphic");
+        RunMetrics.get().add(RunMetrics.NODES_SCANNED, graphicNodeList.getLength());
+        for (int i = 0; i < graphicNodeList.getLength(); i++) {
+            for (Element graphicData : childElements(graphicNodeList.item(i), DocumentScanner.DRAWINGML_NS, "graphicData")) {
+                for (Element picture : childElements(graphicData, DocumentScanner.PICTURE_NS, "pic")) {
+                    index.add(picture);
+                }
+            }
+        }
+
+        System.out.println(String.format("Indexed %d names with blips on %s", index.blips.size(), relationId));
+        return index;
+    }
+
+    public String getRelationId() {
+        return relationId;
+    }
+
+    public int count(String name) {
+        Deque<IndexedBlip> queue = blips.get(name);
+        return queue == null ? 0 : queue.size();
+    }
+
+    public Set<String> names() {
+        return Collections.unmodifiableSet(blips.keySet());
+    }
+
+    public void update(String name, String newRelationId) {
+        Deque<IndexedBlip> queue = blips.get(name);
+        if (queue == null || queue.isEmpty()) {
+            throw new IllegalStateException(String.format("No blip on %s left for %s", relationId, name));
+        }
+
+        IndexedBlip indexedBlip = queue.poll();
+        indexedBlip.blip.getAttributeNodeNS(DocumentScanner.RELATIONSHIPS_NS, "embed").setValue(newRelationId);
+
+        for (String otherName : indexedBlip.names) {
+            if (!otherName.equals(name)) {
+                blips.get(otherName).remove(indexedBlip);
+            }
+        }
+    }
+
+    private void add(Element picture) {
+        List<String> names = new ArrayList<>();
+        for (Element nvPicPr : childElements(picture, DocumentScanner.PICTURE_NS, "nvPicPr")) {
+            for (Element cNvPr : childElements(nvPicPr, DocumentScanner.PICTURE_NS, "cNvPr")) {
+                if (cNvPr.hasAttribute("name") && !names.contains(cNvPr.getAttribute("name"))) {
+                    names.add(cNvPr.getAttribute("name"));
+                }
+            }
+        }
+        if (names.isEmpty()) {
+            return;
+        }
+
+        for (Element blipFill : childElements(picture, DocumentScanner.PICTURE_NS, "blipFill")) {
+            for (Element blip : childElements(blipFill, DocumentScanner.DRAWINGML_NS, "blip")) {
+                if (relationId.equals(blip.getAttributeNS(DocumentScanner.RELATIONSHIPS_NS, "embed"))) {
+                    IndexedBlip indexedBlip = new IndexedBlip(blip, names);
+                    names.forEach(name -> blips.computeIfAbsent(name, key -> new ArrayDeque<>()).add(indexedBlip));
+                }
+            }
+        }
+    }
+
+    private static List<Element> childElements(Node parent, String namespaceURI, String localName) {
+        List<Element> elements = new ArrayList<>();
+        for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE
+                    && namespaceURI.equals(child.getNamespaceURI())
+                    && localName.equals(child.getLocalName())) {
+                elements.add((Element) child);
+            }
+        }
+        return elements;
+    }
+
+    private static class IndexedBlip {
+
+        private final Element blip;
+        private final List<String> names;
+
+        IndexedBlip(Element blip, List<String> names) {
+            this.blip = blip;
+            this.names = names;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package ninckblokje.document;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+class CentralRecord {
+
+    private final byte[] centralHeader;
+    private final String name;
+
+    CentralRecord(byte[] centralHeader) {
+        this.centralHeader = centralHeader;
+        ByteBuffer buffer = ByteBuffer.wrap(centralHeader).order(ByteOrder.LITTLE_ENDIAN);
+        this.name = new String(centralHeader, 46, RawZipWriter.getUnsignedShort(buffer, 28), StandardCharsets.UTF_8);
+    }
+
+    public byte[] getCentralHeader() {
+        return centralHeader;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    private ByteBuffer buffer() {
+        return ByteBuffer.wrap(centralHeader).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public int getFlags() {
+        return RawZipWriter.getUnsignedShort(buffer(), 8);
+    }
+
+    public long getCompressedSize() {
+        return Integer.toUnsignedLong(buffer().getInt(20));
+    }
+
+    public long getSize() {
+        return Integer.toUnsignedLong(buffer().getInt(24));
+    }
+
+    public long getLocalHeaderOffset() {
+        return Integer.toUnsignedLong(buffer().getInt(42));
+    }
+}
@@ -0,0 +1,12 @@
+package ninckblokje.document;
+
+import java.util.*;
+
+class ChunkScan {
+
+    final List<String> embeddedRelationIds = new ArrayList<>();
+    final List<Graphic> graphics = new ArrayList<>();
+    int graphicCount;
+    long nodesScanned;
+    boolean aligned = true;
+}
@@ -0,0 +1,321 @@
+package ninckblokje.document;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+class ChunkScanner {
+
+    private final ByteBuffer buffer;
+    private final String graphic;
+    private final String blip;
+    private final String cNvPr;
+    private final String extent;
+    private final String embed;
+    private boolean aligned = true;
+    private boolean rootPending;
+    private boolean root;
+
+    ChunkScanner(ByteBuffer buffer, Prefixes prefixes) {
+        this(buffer, prefixes, false);
+    }
+
+    ChunkScanner(ByteBuffer buffer, Prefixes prefixes, boolean containsRoot) {
+        this.buffer = buffer;
+        this.rootPending = containsRoot;
+        this.graphic = prefixes == null ? null : prefixes.drawing + ":graphic";
+        this.blip = prefixes == null ? null : prefixes.drawing + ":blip";
+        this.cNvPr = prefixes == null ? null : prefixes.picture + ":cNvPr";
+        this.extent = prefixes == null ? null : prefixes.wordprocessingDrawing + ":extent";
+        this.embed = prefixes == null ? null : prefixes.relationships + ":embed";
+    }
+
+    Map<String, String> readRootAttributes() {
+        int i = 0;
+        int limit = buffer.limit();
+        while (i < limit) {
+            i = indexOf('<', i);
+            if (i < 0 || i + 1 >= limit) {
+                return null;
+            }
+
+            byte next = buffer.get(i + 1);
+            if (next == '?') {
+                i = skipPast("?>", i + 2);
+            } else if (next == '!') {
+                i = skipPast(startsWith("<!--", i) ? "-->" : ">", i + 2);
+            } else {
+                int nameEnd = nameEnd(i + 1);
+                Map<String, String> attributes = new HashMap<>();
+                root = true;
+                readAttributes(nameEnd, attributes);
+                return attributes;
+            }
+            if (i < 0) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    ChunkScan scan() {
+        ChunkScan chunkScan = new ChunkScan();
+        Deque<OpenGraphic> openGraphics = new ArrayDeque<>();
+        long[] lastExtent = null;
+        boolean nested = false;
+
+        int limit = buffer.limit();
+        int i = indexOf('<', 0);
+        while (i >= 0 && i + 1 < limit) {
+            byte next = buffer.get(i + 1);
+
+            if (next == '/') {
+                int nameEnd = nameEnd(i + 2);
+                if (matches(i + 2, nameEnd, graphic)) {
+                    if (openGraphics.isEmpty()) {
+                        aligned = false;
+                    } else {
+                        close(chunkScan, openGraphics.pop());
+                    }
+                }
+                i = indexOf('>', nameEnd);
+            } else if (next == '?') {
+                i = skipPast("?>", i + 2);
+                aligned &= i >= 0;
+            } else if (next == '!') {
+                if (startsWith("<!--", i)) {
+                    i = skipPast("-->", i + 4);
+                } else if (startsWith("<![CDATA[", i)) {
+                    i = skipPast("]]>", i + 9);
+                } else {
+                    i = skipPast(">", i + 2);
+                }
+                aligned &= i >= 0;
+            } else {
+                chunkScan.nodesScanned++;
+                int nameEnd = nameEnd(i + 1);
+                root = rootPending;
+                rootPending = false;
+
+                if (matches(i + 1, nameEnd, extent)) {
+                    Map<String, String> attributes = new HashMap<>();
+                    i = readAttributes(nameEnd, attributes);
+                    lastExtent = new long[]{DocumentScanner.parseExtent(attributes.get("cx")), DocumentScanner.parseExtent(attributes.get("cy"))};
+                } else if (matches(i + 1, nameEnd, graphic)) {
+                    nested |= !openGraphics.isEmpty();
+                    OpenGraphic openGraphic = new OpenGraphic(chunkScan.graphicCount++);
+                    if (lastExtent != null) {
+                        openGraphic.extentCx = lastExtent[0];
+                        openGraphic.extentCy = lastExtent[1];
+                        lastExtent = null;
+                    }
+                    i = readAttributes(nameEnd, null);
+                    if (i > 1 && buffer.get(i - 2) == '/') {
+                        close(chunkScan, openGraphic);
+                    } else {
+                        openGraphics.push(openGraphic);
+                    }
+                } else if (matches(i + 1, nameEnd, blip)) {
+                    Map<String, String> attributes = new HashMap<>();
+                    i = readAttributes(nameEnd, attributes);
+                    String relationId = attributes.get(embed);
+                    if (relationId != null) {
+                        chunkScan.embeddedRelationIds.add(relationId);
+                    }
+                    for (OpenGraphic openGraphic : openGraphics) {
+                        if (!openGraphic.blipFound) {
+                            openGraphic.blipFound = true;
+                            openGraphic.relationId = relationId;
+                        }
+                    }
+                } else if (matches(i + 1, nameEnd, cNvPr)) {
+                    Map<String, String> attributes = new HashMap<>();
+                    i = readAttributes(nameEnd, attributes);
+                    for (OpenGraphic openGraphic : openGraphics) {
+                        if (!openGraphic.pictureFound) {
+                            openGraphic.pictureFound = true;
+                            openGraphic.name = attributes.get("name");
+                        }
+                    }
+                } else {
+                    i = readAttributes(nameEnd, null);
+                }
+            }
+
+            i = i < 0 ? -1 : indexOf('<', i);
+        }
+
+        if (nested) {
+            chunkScan.graphics.sort(Comparator.comparingInt(Graphic::getIndex));
+        }
+        chunkScan.aligned = aligned && openGraphics.isEmpty();
+        return chunkScan;
+    }
+
+    private void close(ChunkScan chunkScan, OpenGraphic openGraphic) {
+        if (openGraphic.pictureFound && openGraphic.blipFound) {
+            chunkScan.graphics.add(new Graphic(openGraphic.index, openGraphic.relationId, openGraphic.name, openGraphic.extentCx, openGraphic.extentCy));
+        }
+    }
+
+    private int readAttributes(int from, Map<String, String> attributes) {
+        int limit = buffer.limit();
+        int i = from;
+        while (i < limit) {
+            byte b = buffer.get(i);
+            if (b == '>') {
+                return i + 1;
+            } else if (b == '/' || ParallelDocumentScanner.isNameEnd(b)) {
+                i++;
+                continue;
+            }
+
+            int nameStart = i;
+            while (i < limit && buffer.get(i) != '=' && !ParallelDocumentScanner.isNameEnd(buffer.get(i))) {
+                i++;
+            }
+            int nameEnd = i;
+            if (!root && isNamespaceDeclaration(nameStart, nameEnd)) {
+                // a prefix bound below the root may not mean what the chunk matches it on
+                aligned = false;
+            }
+            while (i < limit && buffer.get(i) != '"' && buffer.get(i) != '\'') {
+                i++;
+            }
+            if (i >= limit) {
+                break;
+            }
+
+            byte quote = buffer.get(i);
+            int valueStart = i + 1;
+            i = indexOf(quote, valueStart);
+            if (i < 0) {
+                break;
+            }
+            if (attributes != null) {
+                String value = decode(valueStart, i);
+                try {
+                    value = unescape(value);
+                } catch (IllegalArgumentException ex) {
+                    FixImages.debug(String.format("Cannot unescape %s: %s", value, ex.getMessage()));
+                    aligned = false;
+                }
+                attributes.put(decode(nameStart, nameEnd), value);
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    private boolean isNamespaceDeclaration(int from, int to) {
+        return startsWith("xmlns", from) && (to - from == 5 || buffer.get(from + 5) == ':');
+    }
+
+    private boolean matches(int from, int to, String name) {
+        if (name == null || to - from != name.length()) {
+            return false;
+        }
+
+        for (int i = 0; i < name.length(); i++) {
+            if (buffer.get(from + i) != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean startsWith(String prefix, int from) {
+        return from + prefix.length() <= buffer.limit() && matches(from, from + prefix.length(), prefix);
+    }
+
+    private int nameEnd(int from) {
+        int i = from;
+        while (i < buffer.limit() && !ParallelDocumentScanner.isNameEnd(buffer.get(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private int indexOf(int b, int from) {
+        for (int i = from; i < buffer.limit(); i++) {
+            if (buffer.get(i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int skipPast(String terminator, int from) {
+        int index = ParallelDocumentScanner.indexOf(buffer, terminator.getBytes(StandardCharsets.US_ASCII), from, buffer.limit());
+        return index < 0 ? -1 : index + terminator.length();
+    }
+
+    private String decode(int from, int to) {
+        byte[] bytes = new byte[to - from];
+        buffer.get(from, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static String unescape(String value) {
+        int amp = value.indexOf('&');
+        if (amp < 0) {
+            return value;
+        }
+
+        StringBuilder unescaped = new StringBuilder(value.length());
+        int i = 0;
+        while (amp >= 0) {
+            int semicolon = value.indexOf(';', amp);
+            if (semicolon < 0) {
+                break;
+            }
+
+            unescaped.append(value, i, amp);
+            String entity = value.substring(amp + 1, semicolon);
+            switch (entity) {
+                case "amp":
+                    unescaped.append('&');
+                    break;
+                case "lt":
+                    unescaped.append('<');
+                    break;
+                case "gt":
+                    unescaped.append('>');
+                    break;
+                case "quot":
+                    unescaped.append('"');
+                    break;
+                case "apos":
+                    unescaped.append('\'');
+                    break;
+                default:
+                    if (entity.startsWith("#x")) {
+                        unescaped.appendCodePoint(Integer.parseInt(entity.substring(2), 16));
+                    } else if (entity.startsWith("#")) {
+                        unescaped.appendCodePoint(Integer.parseInt(entity.substring(1)));
+                    } else {
+                        unescaped.append('&').append(entity).append(';');
+                    }
+            }
+            i = semicolon + 1;
+            amp = value.indexOf('&', i);
+        }
+        unescaped.append(value, i, value.length());
+        return unescaped.toString();
+    }
+
+    private static class OpenGraphic {
+
+        private final int index;
+        private boolean pictureFound;
+        private boolean blipFound;
+        private String name;
+        private String relationId;
+        private long extentCx;
+        private long extentCy;
+
+        OpenGraphic(int index) {
+            this.index = index;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package ninckblokje.document;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+class CompactXmlCopier {
+
+    private final Writer out;
+    private boolean open;
+
+    CompactXmlCopier(OutputStream out) {
+        this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 16 * 1024);
+    }
+
+    void copy(XMLStreamReader reader) throws XMLStreamException {
+        try {
+            // an element is only closed with > once it is known to have content, <a/> stays <a/>
+            if (open) {
+                open = false;
+                if (reader.getEventType() == XMLStreamConstants.END_ELEMENT) {
+                    out.write("/>");
+                    return;
+                }
+                out.write('>');
+            }
+
+            switch (reader.getEventType()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    writeStartElement(reader, null, null, null);
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    out.write("</");
+                    writeName(reader.getPrefix(), reader.getLocalName());
+                    out.write('>');
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.SPACE:
+                    writeEscaped(reader.getText(), false);
+                    break;
+                case XMLStreamConstants.CDATA:
+                    out.write("<![CDATA[");
+                    out.write(reader.getText());
+                    out.write("]]>");
+                    break;
+                case XMLStreamConstants.COMMENT:
+                    out.write("<!--");
+                    out.write(reader.getText());
+                    out.write("-->");
+                    break;
+                case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                    out.write("<?");
+                    out.write(reader.getPITarget());
+                    if (reader.getPIData() != null && !reader.getPIData().isEmpty()) {
+                        out.write(' ');
+                        out.write(reader.getPIData());
+                    }
+                    out.write("?>");
+                    break;
+                case XMLStreamConstants.ENTITY_REFERENCE:
+                    out.write('&');
+                    out.write(reader.getLocalName());
+                    out.write(';');
+                    break;
+                case XMLStreamConstants.DTD:
+                    out.write(reader.getText());
+                    break;
+                case XMLStreamConstants.START_DOCUMENT:
+                    out.write(String.format("<?xml version=\"%s\" encoding=\"UTF-8\"%s?>",
+                            reader.getVersion() == null ? "1.0" : reader.getVersion(),
+                            reader.standaloneSet() ? (reader.isStandalone() ? " standalone=\"yes\"" : " standalone=\"no\"") : ""));
+                    break;
+                case XMLStreamConstants.END_DOCUMENT:
+                    break;
+                default:
+                    throw new XMLStreamException("Unexpected event " + reader.getEventType());
+            }
+        } catch (IOException ex) {
+            throw new XMLStreamException(ex);
+        }
+    }
+
+    void copyStartElement(XMLStreamReader reader, String attributeNamespace, String attributeLocalName, String attributeValue) throws XMLStreamException {
+        try {
+            if (open) {
+                out.write('>');
+            }
+            writeStartElement(reader, attributeNamespace, attributeLocalName, attributeValue);
+        } catch (IOException ex) {
+            throw new XMLStreamException(ex);
+        }
+    }
+
+    void writeEmptyElement(String prefix, String localName, String... attributes) throws XMLStreamException {
+        try {
+            if (open) {
+                open = false;
+                out.write('>');
+            }
+            out.write('<');
+            writeName(prefix, localName);
+            for (int i = 0; i < attributes.length; i += 2) {
+                writeAttribute(null, attributes[i], attributes[i + 1]);
+            }
+            out.write("/>");
+        } catch (IOException ex) {
+            throw new XMLStreamException(ex);
+        }
+    }
+
+    void flush() throws XMLStreamException {
+        try {
+            if (open) {
+                open = false;
+                out.write('>');
+            }
+            out.flush();
+        } catch (IOException ex) {
+            throw new XMLStreamException(ex);
+        }
+    }
+
+    private void writeStartElement(XMLStreamReader reader, String attributeNamespace, String attributeLocalName, String attributeValue) throws IOException {
+        out.write('<');
+        writeName(reader.getPrefix(), reader.getLocalName());
+
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            String prefix = reader.getNamespacePrefix(i);
+            writeAttribute(prefix == null || prefix.isEmpty() ? null : "xmlns", prefix == null || prefix.isEmpty() ? "xmlns" : prefix,
+                    reader.getNamespaceURI(i));
+        }
+
+        // the cursor keeps attributes in document order, the StartElement events of the JDK do not
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String value = reader.getAttributeValue(i);
+            if (attributeLocalName != null && attributeLocalName.equals(reader.getAttributeLocalName(i))
+                    && attributeNamespace.equals(reader.getAttributeNamespace(i) == null ? "" : reader.getAttributeNamespace(i))) {
+                value = attributeValue;
+            }
+            writeAttribute(reader.getAttributePrefix(i), reader.getAttributeLocalName(i), value);
+        }
+        open = true;
+    }
+
+    private void writeAttribute(String prefix, String localName, String value) throws IOException {
+        out.write(' ');
+        writeName(prefix, localName);
+        out.write("=\"");
+        writeEscaped(value, true);
+        out.write('"');
+    }
+
+    private void writeName(String prefix, String localName) throws IOException {
+        if (prefix != null && !prefix.isEmpty()) {
+            out.write(prefix);
+            out.write(':');
+        }
+        out.write(localName);
+    }
+
+    private void writeEscaped(String text, boolean attribute) throws IOException {
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            String reference;
+            switch (text.charAt(i)) {
+                case '&':
+                    reference = "&amp;";
+                    break;
+                case '<':
+                    reference = "&lt;";
+                    break;
+                case '>':
+                    reference = "&gt;";
+                    break;
+                case '"':
+                    reference = attribute ? "&quot;" : null;
+                    break;
+                case '\r':
+                    // a literal carriage return would be normalized away when the part is parsed again
+                    reference = "&#xD;";
+                    break;
+                case '\n':
+                    reference = attribute ? "&#xA;" : null;
+                    break;
+                case '\t':
+                    reference = attribute ? "&#x9;" : null;
+                    break;
+                default:
+                    reference = null;
+            }
+
+            if (reference != null) {
+                out.write(text, start, i - start);
+                out.write(reference);
+                start = i + 1;
+            }
+        }
+        out.write(text, start, text.length() - start);
+    }
+}
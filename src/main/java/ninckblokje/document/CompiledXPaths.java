@@ -0,0 +1,52 @@
+package ninckblokje.document;
+
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+
+class CompiledXPaths {
+
+    private final XPathExpression blips;
+    private final XPathExpression graphics;
+    private final XPathExpression graphicPicture;
+    private final XPathExpression graphicBlip;
+    private final XPathExpression pictures;
+    private final XPathExpression relationships;
+
+    public CompiledXPaths() throws XPathExpressionException {
+        XPath xPath = XPathFactory.newInstance().newXPath();
+        xPath.setNamespaceContext(FixImages.getNamespaceContext());
+
+        blips = xPath.compile("//a:blip");
+        graphics = xPath.compile("//a:graphic");
+        graphicPicture = xPath.compile(".//pic:cNvPr");
+        graphicBlip = xPath.compile(".//a:blip");
+        pictures = xPath.compile("//pic:cNvPr");
+        relationships = xPath.compile("//pr:Relationship");
+    }
+
+    public XPathExpression getBlips() {
+        return blips;
+    }
+
+    public XPathExpression getGraphics() {
+        return graphics;
+    }
+
+    public XPathExpression getGraphicPicture() {
+        return graphicPicture;
+    }
+
+    public XPathExpression getGraphicBlip() {
+        return graphicBlip;
+    }
+
+    public XPathExpression getPictures() {
+        return pictures;
+    }
+
+    public XPathExpression getRelationships() {
+        return relationships;
+    }
+}
@@ -0,0 +1,41 @@
+package ninckblokje.document;
+
+import java.util.*;
+
+class ConsistencyAnalyzer {
+
+    static ConsistencyResult analyze(List<String> mediaFiles, Map<String, String> relations, Collection<String> nullTargetRelationIds, List<String> embeddedRelationIds) {
+        Set<String> mediaIndex = new HashSet<>(mediaFiles);
+        Set<String> targetIndex = new HashSet<>(relations.values());
+
+        List<String> foundMediaFiles = new ArrayList<>();
+        List<String> orphanMediaFiles = new ArrayList<>();
+        for (String mediaFile : mediaFiles) {
+            if (targetIndex.contains(mediaFile)) {
+                foundMediaFiles.add(mediaFile);
+            } else {
+                orphanMediaFiles.add(mediaFile);
+            }
+        }
+
+        List<String> missingMediaFiles = new ArrayList<>();
+        relations.forEach((id, target) -> {
+            if (!target.toLowerCase().endsWith(".xml") && !mediaIndex.contains(target)) {
+                missingMediaFiles.add(target);
+            }
+        });
+
+        int foundEmbeddedRelationIds = 0;
+        Map<String, Integer> danglingEmbeds = new LinkedHashMap<>();
+        for (String embeddedRelationId : embeddedRelationIds) {
+            if (relations.containsKey(embeddedRelationId)) {
+                foundEmbeddedRelationIds++;
+            } else {
+                danglingEmbeds.merge(embeddedRelationId, 1, Integer::sum);
+            }
+        }
+
+        return new ConsistencyResult(foundMediaFiles, orphanMediaFiles, missingMediaFiles,
+                foundEmbeddedRelationIds, danglingEmbeds, new ArrayList<>(nullTargetRelationIds));
+    }
+}
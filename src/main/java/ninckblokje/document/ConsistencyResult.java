@@ -0,0 +1,55 @@
+package ninckblokje.document;
+
+import java.util.*;
+
+class ConsistencyResult {
+
+    private final List<String> foundMediaFiles;
+    private final List<String> orphanMediaFiles;
+    private final List<String> missingMediaFiles;
+    private final int foundEmbeddedRelationIds;
+    private final Map<String, Integer> danglingEmbeds;
+    private final List<String> nullTargetRelationIds;
+
+    public ConsistencyResult(List<String> foundMediaFiles, List<String> orphanMediaFiles, List<String> missingMediaFiles,
+                             int foundEmbeddedRelationIds, Map<String, Integer> danglingEmbeds, List<String> nullTargetRelationIds) {
+        this.foundMediaFiles = foundMediaFiles;
+        this.orphanMediaFiles = orphanMediaFiles;
+        this.missingMediaFiles = missingMediaFiles;
+        this.foundEmbeddedRelationIds = foundEmbeddedRelationIds;
+        this.danglingEmbeds = danglingEmbeds;
+        this.nullTargetRelationIds = nullTargetRelationIds;
+    }
+
+    public List<String> getFoundMediaFiles() {
+        return foundMediaFiles;
+    }
+
+    public List<String> getOrphanMediaFiles() {
+        return orphanMediaFiles;
+    }
+
+    public List<String> getMissingMediaFiles() {
+        return missingMediaFiles;
+    }
+
+    public int getFoundEmbeddedRelationIds() {
+        return foundEmbeddedRelationIds;
+    }
+
+    public int getNotFoundEmbeddedRelationIds() {
+        return danglingEmbeds.values().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    public Map<String, Integer> getDanglingEmbeds() {
+        return danglingEmbeds;
+    }
+
+    public List<String> getErroneousRelationIds() {
+        return new ArrayList<>(danglingEmbeds.keySet());
+    }
+
+    public List<String> getNullTargetRelationIds() {
+        return nullTargetRelationIds;
+    }
+}
@@ -0,0 +1,114 @@
+package ninckblokje.document;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+
+import javax.xml.stream.*;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.*;
+
+class ContentTypes {
+
+    static final String CONTENT_TYPES_PART = "[Content_Types].xml";
+    static final String CONTENT_TYPES_NS = "http://schemas.openxmlformats.org/package/2006/content-types";
+
+    static int update(DocumentPackage documentPackage, MediaTransfer mediaTransfer) throws IOException, XMLStreamException {
+        if (!documentPackage.hasPart(CONTENT_TYPES_PART)) {
+            return 0;
+        }
+
+        Set<String> extensions = new TreeSet<>();
+        documentPackage.listMedia().forEach(media -> extensions.add(getExtension(media)));
+        for (ImmutablePair<Path, String> transfer : mediaTransfer.getTransfers()) {
+            extensions.add(getExtension(transfer.getRight()));
+        }
+
+        Set<String> defaults;
+        try (InputStream in = documentPackage.openPart(CONTENT_TYPES_PART)) {
+            defaults = readDefaults(in);
+        }
+
+        Map<String, String> newDefaults = new TreeMap<>();
+        for (String extension : extensions) {
+            ImageFormat format = ImageFormat.fromExtension(extension);
+            if (format != null && !defaults.contains(extension)) {
+                newDefaults.put(extension, format.getContentType());
+            }
+        }
+
+        if (!newDefaults.isEmpty()) {
+            Path contentTypesFile = documentPackage.newTempFile(CONTENT_TYPES_PART);
+            try (InputStream in = documentPackage.openPart(CONTENT_TYPES_PART);
+                 OutputStream out = StreamingRewriter.newOutputStream(contentTypesFile)) {
+                rewrite(in, out, newDefaults);
+            }
+            documentPackage.replacePart(CONTENT_TYPES_PART, contentTypesFile);
+        }
+
+        System.out.println(String.format("%d default content types added", newDefaults.size()));
+        return newDefaults.size();
+    }
+
+    static Set<String> readDefaults(InputStream in) throws XMLStreamException {
+        Set<String> defaults = new HashSet<>();
+        readAttributes(in, "Default", "Extension").forEach(extension -> defaults.add(extension.toLowerCase()));
+        return defaults;
+    }
+
+    static Set<String> readOverrides(InputStream in) throws XMLStreamException {
+        return readAttributes(in, "Override", "PartName");
+    }
+
+    private static Set<String> readAttributes(InputStream in, String localName, String attribute) throws XMLStreamException {
+        XMLStreamReader reader = DocumentScanner.getXMLInputFactory().createXMLStreamReader(in);
+
+        Set<String> values = new HashSet<>();
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT
+                        && CONTENT_TYPES_NS.equals(reader.getNamespaceURI())
+                        && localName.equals(reader.getLocalName())) {
+                    values.add(reader.getAttributeValue(null, attribute));
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return values;
+    }
+
+    static void rewrite(InputStream in, OutputStream out, Map<String, String> newDefaults) throws XMLStreamException {
+        XMLStreamReader reader = DocumentScanner.getXMLInputFactory().createXMLStreamReader(in);
+        CompactXmlCopier copier = new CompactXmlCopier(out);
+
+        int depth = 0;
+        try {
+            copier.copy(reader);
+            while (reader.hasNext()) {
+                int event = reader.next();
+
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                } else if (event == XMLStreamConstants.END_ELEMENT && --depth == 0) {
+                    for (Map.Entry<String, String> newDefault : newDefaults.entrySet()) {
+                        FixImages.debug("Adding default content type " + newDefault.getValue() + " for " + newDefault.getKey());
+                        copier.writeEmptyElement(reader.getPrefix(), "Default",
+                                "Extension", newDefault.getKey(),
+                                "ContentType", newDefault.getValue());
+                    }
+                }
+
+                copier.copy(reader);
+            }
+            copier.flush();
+        } finally {
+            reader.close();
+        }
+    }
+
+    static String getExtension(String name) {
+        return name.substring(name.lastIndexOf('.') + 1).toLowerCase();
+    }
+}
@@ -0,0 +1,104 @@
+package ninckblokje.document;
+
+import org.w3c.dom.Document;
+
+import javax.xml.transform.TransformerException;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+class DirectoryPackage implements DocumentPackage {
+
+    private final Path root;
+
+    public DirectoryPackage(Path root) {
+        this.root = root;
+    }
+
+    @Override
+    public Path getPath() {
+        return root;
+    }
+
+    public Path resolve(String name) {
+        return root.resolve(name);
+    }
+
+    @Override
+    public boolean hasPart(String name) {
+        return Files.isRegularFile(resolve(name));
+    }
+
+    @Override
+    public Path getPartFile(String name) {
+        return resolve(name);
+    }
+
+    @Override
+    public InputStream openPart(String name) throws IOException {
+        return new BufferedInputStream(RunMetrics.get().countRead(Files.newInputStream(resolve(name))), 64 * 1024);
+    }
+
+    @Override
+    public List<String> listParts() throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            return paths.filter(Files::isRegularFile)
+                    .map(path -> root.relativize(path).toString().replace('\\', '/'))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    @Override
+    public List<String> listMedia() throws IOException {
+        try (Stream<Path> paths = Files.list(resolve(MEDIA_FOLDER))) {
+            return paths.map(Path::getFileName)
+                    .map(Path::toString)
+                    .collect(Collectors.toList());
+        }
+    }
+
+    @Override
+    public void addPart(String name, Path source) throws IOException {
+        MediaTransfer.copy(source, resolve(name));
+    }
+
+    @Override
+    public void savePart(String name, Document doc) throws IOException, TransformerException {
+        System.out.println("Storing document " + resolve(name));
+        Path partFile = newTempFile(name);
+        try (OutputStream out = StreamingRewriter.newOutputStream(partFile)) {
+            FixImages.saveDocument(doc, out);
+        } catch (IOException | TransformerException | RuntimeException ex) {
+            Files.deleteIfExists(partFile);
+            throw ex;
+        }
+        replacePart(name, partFile);
+    }
+
+    @Override
+    public void replacePart(String name, Path source) throws IOException {
+        DocumentPackage.moveOver(source, resolve(name));
+    }
+
+    @Override
+    public Path newTempFile(String name) throws IOException {
+        return DocumentPackage.createTempFile(resolve(name).getParent(), ".fix-images");
+    }
+
+    @Override
+    public void commit(Path target, RepairOptions options) {
+        if (target != null && !target.equals(root)) {
+            throw new IllegalArgumentException(String.format("Directory package %s is updated in place, cannot commit to %s", root, target));
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,90 @@
+package ninckblokje.document;
+
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.TransformerException;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+interface DocumentPackage extends Closeable {
+
+    String DOCUMENT_PART = "word/document.xml";
+    String RELATIONS_PART = "word/_rels/document.xml.rels";
+    String MEDIA_FOLDER = "word/media/";
+
+    static DocumentPackage open(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            return new DirectoryPackage(path);
+        }
+        return new ZipPackage(path);
+    }
+
+    Path getPath();
+
+    boolean hasPart(String name);
+
+    InputStream openPart(String name) throws IOException;
+
+    List<String> listParts() throws IOException;
+
+    default Path getPartFile(String name) {
+        return null;
+    }
+
+    void addPart(String name, Path source) throws IOException;
+
+    void savePart(String name, Document doc) throws IOException, TransformerException;
+
+    void replacePart(String name, Path source) throws IOException;
+
+    default Path newTempFile(String name) throws IOException {
+        return Files.createTempFile("fix-images", ".tmp");
+    }
+
+    static Path createTempFile(Path folder, String prefix) throws IOException {
+        // Files.createTempFile makes the file owner-only, this one gets the same default permissions as any new file
+        while (true) {
+            Path file = folder.resolve(prefix + Long.toUnsignedString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+            try {
+                return Files.createFile(file);
+            } catch (FileAlreadyExistsException ex) {
+                FixImages.debug(file + " already exists, trying another name");
+            }
+        }
+    }
+
+    static void moveOver(Path source, Path target) throws IOException {
+        if (Files.exists(target) && Files.getFileStore(target).supportsFileAttributeView(PosixFileAttributeView.class)) {
+            Files.setPosixFilePermissions(source, Files.getPosixFilePermissions(target));
+        }
+        Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    void commit(Path target, RepairOptions options) throws IOException, TransformerException;
+
+    default List<String> listMedia() throws IOException {
+        return listParts().stream()
+                .filter(name -> name.startsWith(MEDIA_FOLDER) && name.length() > MEDIA_FOLDER.length())
+                .map(name -> name.substring(MEDIA_FOLDER.length()))
+                .collect(Collectors.toList());
+    }
+
+    default Document parsePart(String name) throws IOException, SAXException, ParserConfigurationException {
+        try (InputStream in = openPart(name);
+             ResourcePool.Lease<DocumentBuilder> documentBuilder = FixImages.DOCUMENT_BUILDERS.acquire()) {
+            return documentBuilder.get().parse(in);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package ninckblokje.document;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class DocumentReport {
+
+    private final String name;
+    private int foundMediaFiles;
+    private int notFoundMediaFiles;
+    private int missingMediaFiles;
+    private List<String> erroneousRelationIds = new ArrayList<>();
+    private int nullTargetRelations;
+    private int imagesAdded;
+    private String error;
+
+    public DocumentReport(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getFoundMediaFiles() {
+        return foundMediaFiles;
+    }
+
+    public void setFoundMediaFiles(int foundMediaFiles) {
+        this.foundMediaFiles = foundMediaFiles;
+    }
+
+    public int getNotFoundMediaFiles() {
+        return notFoundMediaFiles;
+    }
+
+    public void setNotFoundMediaFiles(int notFoundMediaFiles) {
+        this.notFoundMediaFiles = notFoundMediaFiles;
+    }
+
+    public int getMissingMediaFiles() {
+        return missingMediaFiles;
+    }
+
+    public void setMissingMediaFiles(int missingMediaFiles) {
+        this.missingMediaFiles = missingMediaFiles;
+    }
+
+    public List<String> getErroneousRelationIds() {
+        return erroneousRelationIds;
+    }
+
+    public void setErroneousRelationIds(List<String> erroneousRelationIds) {
+        this.erroneousRelationIds = erroneousRelationIds;
+    }
+
+    public int getNullTargetRelations() {
+        return nullTargetRelations;
+    }
+
+    public void setNullTargetRelations(int nullTargetRelations) {
+        this.nullTargetRelations = nullTargetRelations;
+    }
+
+    public int getImagesAdded() {
+        return imagesAdded;
+    }
+
+    public void setImagesAdded(int imagesAdded) {
+        this.imagesAdded = imagesAdded;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public boolean isFailed() {
+        return error != null;
+    }
+
+    @Override
+    public String toString() {
+        if (isFailed()) {
+            return String.format("%s - failed: %s", name, error);
+        }
+        return String.format("%s - %d found media files, %d not found media files, %d missing media files, erroneous embedded relation ids %s, %d NULL targets, %d images added",
+                name, foundMediaFiles, notFoundMediaFiles, missingMediaFiles, erroneousRelationIds, nullTargetRelations, imagesAdded);
+    }
+}
@@ -0,0 +1,28 @@
+package ninckblokje.document;
+
+import java.util.*;
+
+class DocumentScan {
+
+    private final List<String> embeddedRelationIds;
+    private final List<Graphic> graphics;
+    private final Set<String> embedIds;
+
+    public DocumentScan(List<String> embeddedRelationIds, List<Graphic> graphics) {
+        this.embeddedRelationIds = embeddedRelationIds;
+        this.graphics = graphics;
+        this.embedIds = new HashSet<>(embeddedRelationIds);
+    }
+
+    public List<String> getEmbeddedRelationIds() {
+        return embeddedRelationIds;
+    }
+
+    public List<Graphic> getGraphics() {
+        return graphics;
+    }
+
+    public Set<String> getEmbedIds() {
+        return embedIds;
+    }
+}
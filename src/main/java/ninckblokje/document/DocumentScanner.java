@@ -0,0 +1,138 @@
+package ninckblokje.document;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+class DocumentScanner {
+
+    static final String DRAWINGML_NS = "http://schemas.openxmlformats.org/drawingml/2006/main";
+    static final String PICTURE_NS = "http://schemas.openxmlformats.org/drawingml/2006/picture";
+    static final String RELATIONSHIPS_NS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+    static final String WORDPROCESSING_DRAWING_NS = "http://schemas.openxmlformats.org/drawingml/2006/wordprocessingDrawing";
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = newXMLInputFactory();
+
+    static DocumentScan scan(Path documentFile) throws IOException, XMLStreamException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(documentFile), 64 * 1024)) {
+            return scan(in);
+        }
+    }
+
+    static DocumentScan scan(InputStream in) throws XMLStreamException {
+        XMLStreamReader reader = getXMLInputFactory().createXMLStreamReader(in);
+
+        List<String> embeddedRelationIds = new ArrayList<>();
+        List<Graphic> graphics = new ArrayList<>();
+        Deque<OpenGraphic> openGraphics = new ArrayDeque<>();
+        long[] extent = null;
+        int graphicCount = 0;
+        long nodesScanned = 0;
+        boolean nested = false;
+
+        try {
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    nodesScanned++;
+                    String namespaceURI = reader.getNamespaceURI();
+                    String localName = reader.getLocalName();
+
+                    if (WORDPROCESSING_DRAWING_NS.equals(namespaceURI) && "extent".equals(localName)) {
+                        extent = new long[]{parseExtent(reader.getAttributeValue(null, "cx")), parseExtent(reader.getAttributeValue(null, "cy"))};
+                    } else if (DRAWINGML_NS.equals(namespaceURI) && "graphic".equals(localName)) {
+                        nested |= !openGraphics.isEmpty();
+                        OpenGraphic openGraphic = new OpenGraphic(graphicCount++);
+                        if (extent != null) {
+                            openGraphic.extentCx = extent[0];
+                            openGraphic.extentCy = extent[1];
+                            extent = null;
+                        }
+                        openGraphics.push(openGraphic);
+                    } else if (DRAWINGML_NS.equals(namespaceURI) && "blip".equals(localName)) {
+                        String embed = reader.getAttributeValue(RELATIONSHIPS_NS, "embed");
+                        if (embed != null) {
+                            embeddedRelationIds.add(embed);
+                        }
+                        for (OpenGraphic openGraphic : openGraphics) {
+                            if (!openGraphic.blipFound) {
+                                openGraphic.blipFound = true;
+                                openGraphic.relationId = embed;
+                            }
+                        }
+                    } else if (PICTURE_NS.equals(namespaceURI) && "cNvPr".equals(localName)) {
+                        String name = reader.getAttributeValue(null, "name");
+                        for (OpenGraphic openGraphic : openGraphics) {
+                            if (!openGraphic.pictureFound) {
+                                openGraphic.pictureFound = true;
+                                openGraphic.name = name;
+                            }
+                        }
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (DRAWINGML_NS.equals(reader.getNamespaceURI()) && "graphic".equals(reader.getLocalName())) {
+                        OpenGraphic openGraphic = openGraphics.pop();
+                        if (openGraphic.pictureFound && openGraphic.blipFound) {
+                            graphics.add(new Graphic(openGraphic.index, openGraphic.relationId, openGraphic.name, openGraphic.extentCx, openGraphic.extentCy));
+                        }
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        RunMetrics.get().add(RunMetrics.NODES_SCANNED, nodesScanned);
+
+        if (nested) {
+            graphics.sort(Comparator.comparingInt(Graphic::getIndex));
+        }
+
+        System.out.println(String.format("%d blip nodes found", embeddedRelationIds.size()));
+        System.out.println(String.format("%d graphics found", graphicCount));
+
+        return new DocumentScan(embeddedRelationIds, graphics);
+    }
+
+    static long parseExtent(String value) {
+        try {
+            return value == null ? 0 : Long.parseLong(value);
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+
+    static XMLInputFactory getXMLInputFactory() {
+        return XML_INPUT_FACTORY;
+    }
+
+    private static XMLInputFactory newXMLInputFactory() {
+        XMLInputFactory xif = XMLInputFactory.newDefaultFactory();
+        xif.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        xif.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xif.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return xif;
+    }
+
+    private static class OpenGraphic {
+
+        private final int index;
+        private boolean pictureFound;
+        private boolean blipFound;
+        private String name;
+        private String relationId;
+        private long extentCx;
+        private long extentCy;
+
+        OpenGraphic(int index) {
+            this.index = index;
+        }
+    }
+}
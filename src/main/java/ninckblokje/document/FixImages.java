@@ -1,5 +1,6 @@
 package ninckblokje.document;
 
+import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.ImmutableTriple;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -8,157 +9,558 @@ import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
 import javax.xml.namespace.NamespaceContext;
+import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
-import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.function.BiConsumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static javax.xml.xpath.XPathConstants.*;
 
+// phases are timed by the scope of a try-with-resources block, the phase itself is never referenced
+@SuppressWarnings("try")
 public class FixImages {
 
+    private static final Pattern IMAGE_FILENAME_PATTERN = Pattern.compile("^image(\\d+)\\.");
+    private static final Pattern RID_PATTERN = Pattern.compile("^(rId)(\\d+)$");
+
+    static final ResourcePool<CompiledXPaths> XPATHS = new ResourcePool<>(CompiledXPaths::new, null);
+    static final ResourcePool<DocumentBuilder> DOCUMENT_BUILDERS = new ResourcePool<>(() -> getDocumentBuilderFactory().newDocumentBuilder(), DocumentBuilder::reset);
+    static final ResourcePool<Transformer> TRANSFORMERS = new ResourcePool<>(() -> TransformerFactory.newDefaultInstance().newTransformer(), Transformer::reset);
+
+    static volatile boolean verbose = false;
+
     public static void main(String[] args) throws Exception {
-        Document doc = getDocumentBuilderFactory().newDocumentBuilder().parse(new File("data/working/word/document.xml"));
-        Document relDoc = getDocumentBuilderFactory().newDocumentBuilder().parse(new File("data/working/word/_rels/document.xml.rels"));
+        List<String> arguments = Arrays.asList(args);
+        boolean streaming = arguments.contains("--stream");
+        String output = getOption(args, "output", null);
+        List<String> inputs = arguments.stream()
+                .filter(arg -> !arg.startsWith("--"))
+                .collect(Collectors.toList());
 
-        XPath xPath = XPathFactory.newInstance().newXPath();
-        xPath.setNamespaceContext(getNamespaceContext());
+        verbose = arguments.contains("--verbose");
+        String report = getOption(args, "report", null);
+        String jfr = getOption(args, "jfr", null);
+        if (jfr != null) {
+            RunMetrics.get().startJfr();
+        }
 
-        XPathExpression xPathExpression = xPath.compile("//a:blip");
-        NodeList nodeList = (NodeList) xPathExpression.evaluate(doc.getDocumentElement(), NODESET);
-        System.out.println(String.format("%d blip nodes found", nodeList.getLength()));
+        try {
+            run(arguments, args, inputs, streaming, output);
+        } finally {
+            if (jfr != null) {
+                RunMetrics.get().stopJfr(Path.of(jfr));
+            }
+            if (report != null) {
+                RunMetrics.get().writeReport(Path.of(report));
+            }
+        }
+    }
 
-        List<String> embeddedRelationIds = new ArrayList<>();
-        for (int i = 0; i < nodeList.getLength(); i++) {
-            Node node = nodeList.item(i);
-            Node embed = node.getAttributes().getNamedItemNS("http://schemas.openxmlformats.org/officeDocument/2006/relationships", "embed");
-            embeddedRelationIds.add(embed.getTextContent());
+    static void run(List<String> arguments, String[] args, List<String> inputs, boolean streaming, String output) throws Exception {
+        RepairOptions options = new RepairOptions();
+        options.setMissingImagesFolder(Path.of(getOption(args, "missing-images", "data/missingImages")));
+        options.setTransfers(Integer.parseInt(getOption(args, "transfers", "4")));
+        options.setReuseGaps(arguments.contains("--reuse-gaps"));
+        options.setThreads(Integer.parseInt(getOption(args, "threads", String.valueOf(Runtime.getRuntime().availableProcessors()))));
+        options.setDownscaleDpi(Integer.parseInt(getOption(args, "downscale-dpi", "0")));
+        options.setParallelScan(arguments.contains("--parallel-scan"));
+        options.setVerifyScan(arguments.contains("--verify-scan"));
+        options.setDecodeMemory(Long.parseLong(getOption(args, "decode-memory", "256")) * 1024 * 1024);
+        options.setDeflateThreads(Integer.parseInt(getOption(args, "deflate-threads", String.valueOf(Runtime.getRuntime().availableProcessors()))));
+        options.setDeflateThreshold(Long.parseLong(getOption(args, "deflate-threshold", "4")) * 1024 * 1024);
+        String analysisCache = getOption(args, "analysis-cache", null);
+        if (analysisCache != null) {
+            options.setAnalysisCache(new AnalysisCache(Path.of(analysisCache), Long.parseLong(getOption(args, "analysis-cache-size", "64")) * 1024 * 1024));
         }
-        System.out.println(String.format("%d embedded relation id found", embeddedRelationIds.size()));
 
-        List<String> mediaFiles = parseMediaFiles();
-        Map<String, String> relations = parseRelations(relDoc);
+        if (arguments.contains("--serve")) {
+            RepairServer server = new RepairServer(options, streaming, Long.parseLong(getOption(args, "max-in-flight", "256")) * 1024 * 1024);
+            Thread mainThread = Thread.currentThread();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.stop();
+                try {
+                    mainThread.join(5000);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+            server.start(Integer.parseInt(getOption(args, "port", "8080")));
+            server.awaitStop();
+            return;
+        }
 
-        List<String> foundMediaFiles = new ArrayList<>();
-        List<String> notFoundMediaFiles = new ArrayList<>();
+        if (arguments.contains("--batch")) {
+            int threads = options.getThreads();
+            List<Path> documents = BatchRepair.collectDocuments(inputs);
+            options.setDoneFolder(null);
+            options.setThreads(1);
+            options.setDeflateThreads(1);
+            BatchRepair.run(documents, options, output == null ? null : Path.of(output), threads);
+            return;
+        }
 
-        Collection<String> relationValues = relations.values();
-        mediaFiles.forEach(mediaFile -> {
-            if (relationValues.contains(mediaFile)) {
-                foundMediaFiles.add(mediaFile);
-            } else {
-                notFoundMediaFiles.add(mediaFile);
+        Path packagePath = inputs.isEmpty() ? Path.of("data/working") : Path.of(inputs.get(0));
+        String journal = getOption(args, "journal", null);
+        options.setJournal(journal == null ? null : Path.of(journal));
+        try (DocumentPackage documentPackage = DocumentPackage.open(packagePath)) {
+            analyze(documentPackage, streaming, options);
+
+            if (arguments.contains("--watch")) {
+                WatchRepair watchRepair = new WatchRepair(documentPackage, options, output == null ? null : Path.of(output), Long.parseLong(getOption(args, "debounce", "500")));
+                watchRepair.open();
+                watchRepair.run();
+            } else if (arguments.contains("--repair") && streaming) {
+                repairStreaming(documentPackage, options, output == null ? null : Path.of(output));
+            } else if (arguments.contains("--repair")) {
+                repair(documentPackage, options, output == null ? null : Path.of(output));
             }
-        });
-        System.out.println(String.format("%d found media files, %d not found media files", foundMediaFiles.size(), notFoundMediaFiles.size()));
-
-        List<String> missingMediaFiles = new ArrayList<>();
+        }
 
-        relations.forEach((key, value) -> {
-            if (!value.toLowerCase().endsWith(".xml") && !mediaFiles.contains(value)) {
-                missingMediaFiles.add(value);
+        if (arguments.contains("--verify")) {
+            Path verified = output != null && arguments.contains("--repair") ? Path.of(output) : packagePath;
+            if (!Files.isDirectory(verified) && !PackageVerifier.verify(verified).isEmpty()) {
+                throw new IOException(String.format("Package %s failed verification", verified));
             }
-        });
-        System.out.println(String.format("%d missing media files", missingMediaFiles.size()));
+        }
+    }
 
-        List<String> foundEmbeddedRelationIds = new ArrayList<>();
-        List<String> notFoundEmbeddedRelationIds = new ArrayList<>();
+    static void debug(String message) {
+        if (verbose) {
+            System.out.println(message);
+        }
+    }
 
-        embeddedRelationIds.stream().forEach(embeddedRelationId -> {
-            if (relations.containsKey(embeddedRelationId)) {
-                foundEmbeddedRelationIds.add(embeddedRelationId);
-            } else {
-                notFoundEmbeddedRelationIds.add(embeddedRelationId);
-            }
-        });
-        System.out.println(String.format("%d found embedded relation ids, %d not found embedded relation ids", foundEmbeddedRelationIds.size(), notFoundEmbeddedRelationIds.size()));
+    static String getOption(String[] args, String name, String defaultValue) {
+        String prefix = "--" + name + "=";
+        return Arrays.stream(args)
+                .filter(arg -> arg.startsWith(prefix))
+                .map(arg -> arg.substring(prefix.length()))
+                .findFirst()
+                .orElse(defaultValue);
+    }
+
+    static DocumentReport analyze(DocumentPackage documentPackage, boolean streaming, RepairOptions options) throws Exception {
+        DocumentReport report = new DocumentReport(documentPackage.getPath().getFileName().toString());
+
+        PackageScan packageScan;
+        try (RunMetrics.Phase phase = RunMetrics.get().phase(RunMetrics.PARSE)) {
+            packageScan = PackageScanner.scan(documentPackage, options, streaming);
+        }
+        Map<String, String> relations = packageScan.getRelations();
+        List<String> nullTargetRelationIds = packageScan.getNullTargetRelationIds();
+        List<String> embeddedRelationIds = packageScan.getEmbeddedRelationIds();
+        List<Graphic> graphics = packageScan.getGraphics();
+        System.out.println(String.format("%d embedded relation id found", embeddedRelationIds.size()));
+
+        try (RunMetrics.Phase phase = RunMetrics.get().phase(RunMetrics.ANALYZE)) {
+            analyze(documentPackage, relations, nullTargetRelationIds, embeddedRelationIds, graphics, report);
+        }
+        return report;
+    }
+
+    static ConsistencyResult analyze(DocumentPackage documentPackage, Map<String, String> relations, List<String> nullTargetRelationIds, List<String> embeddedRelationIds, List<Graphic> graphics, DocumentReport report) throws Exception {
+        List<String> mediaFiles = parseMediaFiles(documentPackage);
+
+        ConsistencyResult result = ConsistencyAnalyzer.analyze(mediaFiles, relations, nullTargetRelationIds, embeddedRelationIds);
+        System.out.println(String.format("%d found media files, %d not found media files", result.getFoundMediaFiles().size(), result.getOrphanMediaFiles().size()));
+        System.out.println(String.format("%d missing media files", result.getMissingMediaFiles().size()));
+        System.out.println(String.format("%d found embedded relation ids, %d not found embedded relation ids", result.getFoundEmbeddedRelationIds(), result.getNotFoundEmbeddedRelationIds()));
+        System.out.println(String.format("%d relation ids with a NULL target", result.getNullTargetRelationIds().size()));
 
         System.err.println(String.format(
                 "Erroneous embedded relation ids: %s",
-                notFoundEmbeddedRelationIds.stream().distinct().collect(Collectors.toList())
+                result.getErroneousRelationIds()
         ));
 
-        List<Graphic> graphics = parseGraphics(doc);
         graphics.stream()
-                .filter(graphic -> graphic.getRelationId().equals("rId7"))
-                .forEach(graphic -> System.out.println(String.format("%d - %s - %s", graphic.getIndex() + 1, graphic.getRelationId(), graphic.getFilename())));
+                .filter(graphic -> "rId7".equals(graphic.getRelationId()))
+                .forEach(graphic -> debug(String.format("%d - %s - %s", graphic.getIndex() + 1, graphic.getRelationId(), graphic.getFilename())));
+
+        report.setFoundMediaFiles(result.getFoundMediaFiles().size());
+        report.setNotFoundMediaFiles(result.getOrphanMediaFiles().size());
+        report.setMissingMediaFiles(result.getMissingMediaFiles().size());
+        report.setErroneousRelationIds(result.getErroneousRelationIds());
+        report.setNullTargetRelations(result.getNullTargetRelationIds().size());
+        return result;
+    }
+
+    static int repair(DocumentPackage documentPackage, RepairOptions options, Path target) throws Exception {
+        try (RepairJournal journal = RepairJournal.open(options.getJournal(), documentPackage.getPath(), target)) {
+            if (journal != null && journal.isCommitted()) {
+                return journal.finish(options);
+            }
+            return repair(documentPackage, options, target, journal);
+        }
+    }
+
+    static int repair(DocumentPackage documentPackage, RepairOptions options, Path target, RepairJournal journal) throws Exception {
+        RunMetrics metrics = RunMetrics.get();
+
+        Map<String, Document> docs = new LinkedHashMap<>();
+        Map<String, Document> relDocs = new HashMap<>();
+        try (RunMetrics.Phase phase = metrics.phase(RunMetrics.PARSE)) {
+            List<String> parts = PackageScanner.discoverParts(documentPackage);
+            List<Callable<ImmutablePair<Document, Document>>> tasks = new ArrayList<>();
+            for (String part : parts) {
+                tasks.add(() -> {
+                    Document relDoc = documentPackage.parsePart(PackageScanner.getRelationsPart(part));
+                    if (!DocumentPackage.DOCUMENT_PART.equals(part) && hasRelation(relDoc, "rId7")) {
+                        return null;
+                    }
+                    return ImmutablePair.of(documentPackage.parsePart(part), relDoc);
+                });
+            }
+
+            List<ImmutablePair<Document, Document>> parsed = PackageScanner.invokeAll(tasks, options.getThreads());
+            for (int i = 0; i < parts.size(); i++) {
+                if (parsed.get(i) != null) {
+                    docs.put(parts.get(i), parsed.get(i).getLeft());
+                    relDocs.put(parts.get(i), parsed.get(i).getRight());
+                }
+            }
+        }
+
+        MediaTransfer mediaTransfer = new MediaTransfer(journal);
+        Map<String, long[]> extents = new HashMap<>();
+        List<String> repairedParts = new ArrayList<>();
+        int imagesAdded = 0;
+        try (RunMetrics.Phase phase = metrics.phase(RunMetrics.ALLOCATE)) {
+            ImageFileWalker imageFileWalker = new ImageFileWalker(getImageFileAllocator(documentPackage, options.isReuseGaps()));
+            MediaDigestIndex mediaDigestIndex = newMediaDigestIndex(documentPackage, journal);
+
+            // parts are planned one after the other, image numbers and the journal follow the part order
+            for (Map.Entry<String, Document> doc : docs.entrySet()) {
+                Document relDoc = relDocs.get(doc.getKey());
+                if (journal != null) {
+                    journal.part(doc.getKey());
+                }
+                if (options.getDownscaleDpi() > 0) {
+                    MediaDownscaler.addRequiredExtents(extents, parseGraphics(doc.getValue()), "rId7");
+                }
+
+                IdAllocator rIdAllocator = getRIdAllocator(relDoc, doc.getValue(), "rId7", options.isReuseGaps());
+                int partImagesAdded = addMissingImages(doc.getValue(), relDoc, new RIdWalker(rIdAllocator), imageFileWalker,
+                        mediaDigestIndex.forRelations(parseRelations(relDoc)), options.getMissingImagesFolder(), mediaTransfer);
+
+                if (partImagesAdded > 0 || DocumentPackage.DOCUMENT_PART.equals(doc.getKey())) {
+                    repairedParts.add(doc.getKey());
+                }
+
+                imagesAdded += partImagesAdded;
+            }
+
+            if (journal != null) {
+                journal.planned(imagesAdded);
+            }
+        }
+
+        downscale(mediaTransfer, extents, options);
 
-//        ImageFile maxImageFile = getMaxImageFile();
-//        RId maxRId = getMaxRId(relDoc);
-//        addMissingImages(doc, relDoc, maxRId, maxImageFile);
-//
-//        saveDocument(relDoc, new File("data/working/word/_rels/document.xml.rels"));
-//        saveDocument(doc, new File("data/working/word/document.xml"));
+        try (RunMetrics.Phase phase = metrics.phase(RunMetrics.COPY)) {
+            mediaTransfer.execute(documentPackage, options.getTransfers());
+        }
+
+        try (RunMetrics.Phase phase = metrics.phase(RunMetrics.SAVE)) {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (String part : repairedParts) {
+                tasks.add(() -> {
+                    documentPackage.savePart(PackageScanner.getRelationsPart(part), relDocs.get(part));
+                    documentPackage.savePart(part, docs.get(part));
+                    return null;
+                });
+            }
+            PackageScanner.invokeAll(tasks, options.getThreads());
+            ContentTypes.update(documentPackage, mediaTransfer);
+            documentPackage.commit(target, options);
+        }
+
+        finishRepair(mediaTransfer, options, journal);
+        metrics.add(RunMetrics.IMAGES_INSERTED, imagesAdded);
+        System.out.println(String.format("%d images added", imagesAdded));
+        return imagesAdded;
+    }
+
+    static int repairStreaming(DocumentPackage documentPackage, RepairOptions options, Path target) throws Exception {
+        try (RepairJournal journal = RepairJournal.open(options.getJournal(), documentPackage.getPath(), target)) {
+            if (journal != null && journal.isCommitted()) {
+                return journal.finish(options);
+            }
+            return repairStreaming(documentPackage, options, target, journal);
+        }
     }
 
-    static void addMissingImages(Document doc, Document relDoc, RId rId, ImageFile imageFile) throws IOException {
-        ImageFileWalker imageFileWalker = new ImageFileWalker(imageFile);
-        RIdWalker rIdWalker = new RIdWalker(rId);
+    static int repairStreaming(DocumentPackage documentPackage, RepairOptions options, Path target, RepairJournal journal) throws Exception {
+        RunMetrics metrics = RunMetrics.get();
+
+        PackageScan packageScan;
+        try (RunMetrics.Phase phase = metrics.phase(RunMetrics.PARSE)) {
+            packageScan = PackageScanner.scan(documentPackage, options);
+        }
+
+        MediaTransfer mediaTransfer = new MediaTransfer(journal);
+        Map<String, long[]> extents = new HashMap<>();
+        List<PartRepair> partRepairs = new ArrayList<>();
+        int imagesAdded = 0;
+        try (RunMetrics.Phase phase = metrics.phase(RunMetrics.ALLOCATE)) {
+            ImageFileWalker imageFileWalker = new ImageFileWalker(getImageFileAllocator(documentPackage, options.isReuseGaps()));
+            MediaDigestIndex mediaDigestIndex = newMediaDigestIndex(documentPackage, journal);
+
+            List<Path> missingImages;
+            try (Stream<Path> paths = Files.list(options.getMissingImagesFolder())) {
+                missingImages = paths.collect(Collectors.toList());
+            }
+
+            for (PartScan partScan : packageScan.getParts()) {
+                Map<String, Integer> missingImageCounts = partScan.getMissingImageCounts("rId7");
+                if (missingImageCounts.isEmpty() && !DocumentPackage.DOCUMENT_PART.equals(partScan.getPart())) {
+                    continue;
+                }
+
+                IdAllocator rIdAllocator;
+                try (InputStream in = documentPackage.openPart(partScan.getRelationsPart())) {
+                    rIdAllocator = StreamingRewriter.getRIdAllocator(in, partScan.getScan().getEmbedIds(), "rId7", options.isReuseGaps());
+                }
+                MediaDownscaler.addRequiredExtents(extents, partScan.getScan().getGraphics(), "rId7");
+                PartRepair partRepair = new PartRepair(partScan);
+                if (journal != null) {
+                    journal.part(partScan.getPart());
+                }
+                imagesAdded += planPartRepair(partRepair, missingImageCounts, missingImages, mediaTransfer,
+                        mediaDigestIndex.forRelations(partScan.getRelations()), new RIdWalker(rIdAllocator), imageFileWalker);
+                partRepairs.add(partRepair);
+            }
+
+            if (journal != null) {
+                journal.planned(imagesAdded);
+            }
+        }
+
+        downscale(mediaTransfer, extents, options);
+
+        try (RunMetrics.Phase phase = metrics.phase(RunMetrics.COPY)) {
+            mediaTransfer.execute(documentPackage, options.getTransfers());
+        }
+
+        try (RunMetrics.Phase phase = metrics.phase(RunMetrics.SAVE)) {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (PartRepair partRepair : partRepairs) {
+                tasks.add(() -> {
+                    rewritePart(documentPackage, partRepair);
+                    return null;
+                });
+            }
+            PackageScanner.invokeAll(tasks, options.getThreads());
+            ContentTypes.update(documentPackage, mediaTransfer);
+            documentPackage.commit(target, options);
+        }
 
-        Files.list(Path.of("data/missingImages"))
-                .filter(path -> isImageMissing(doc, path))
-                .map(path -> ImmutableTriple.of(path, rIdWalker, imageFileWalker))
-                .forEach(pair -> addMissingImage(doc, relDoc, pair.getMiddle(), pair.getRight(), pair.getLeft()));
+        finishRepair(mediaTransfer, options, journal);
+        metrics.add(RunMetrics.IMAGES_INSERTED, imagesAdded);
+        System.out.println(String.format("%d images added", imagesAdded));
+        return imagesAdded;
     }
 
-    static void addMissingImage(Document doc, Document relDoc, RIdWalker rIdWalker, ImageFileWalker imageFileWalker, Path path) {
-        double missingImageCount = imageMissingCount(doc, path);
+    static MediaDigestIndex newMediaDigestIndex(DocumentPackage documentPackage, RepairJournal journal) {
+        if (journal != null && journal.isResuming()) {
+            // every placement comes from the journal, there is nothing to match against
+            return new MediaDigestIndex();
+        }
+        return MediaDigestIndex.build(documentPackage, Collections.emptyMap());
+    }
 
-        System.out.println(path.getFileName() + " is missing " + missingImageCount + " times");
+    static void finishRepair(MediaTransfer mediaTransfer, RepairOptions options, RepairJournal journal) throws IOException {
+        if (journal != null) {
+            journal.committed();
+        }
+        mediaTransfer.moveDone(options.getDoneFolder());
+        if (journal != null) {
+            journal.complete();
+        }
+    }
 
-        try {
-            for (double i=0.0; i<missingImageCount; i=i+1.0) {
-                RId rId = rIdWalker.next();
-                ImageFile imageFile = imageFileWalker.next();
+    static void downscale(MediaTransfer mediaTransfer, Map<String, long[]> extents, RepairOptions options) throws IOException, InterruptedException {
+        if (options.getDownscaleDpi() <= 0) {
+            return;
+        }
+
+        try (RunMetrics.Phase phase = RunMetrics.get().phase(RunMetrics.DOWNSCALE)) {
+            new MediaDownscaler(options.getDownscaleDpi(), options.getDecodeMemory())
+                    .downscale(mediaTransfer, extents, options.getMissingImagesFolder(), options.getThreads());
+        }
+    }
 
-                System.out.println(path.getFileName() + " will get " + rId.getrId() + " on index " + i);
+    static int planPartRepair(PartRepair partRepair, Map<String, Integer> missingImageCounts, List<Path> missingImages, MediaTransfer mediaTransfer, MediaDigestIndex mediaDigestIndex, RIdWalker rIdWalker, ImageFileWalker imageFileWalker) throws IOException {
+        int imagesAdded = 0;
+        rIdWalker.reserve(countNewRelationships(mediaTransfer, mediaDigestIndex, missingImageCounts, missingImages));
+
+        for (Path path : missingImages) {
+            String name = path.getFileName().toString();
+            int missingImageCount = missingImageCounts.getOrDefault(name, 0);
+            if (missingImageCount == 0) {
+                continue;
+            }
 
-                Path targetFile = Path.of("data/working/word/media", imageFile.getFilename());
-                System.out.println("Copying " + path + " to " + targetFile);
-                Files.copy(path, targetFile);
+            debug(name + " is missing " + missingImageCount + " times in " + partRepair.getPart());
+            RId rId = placeMissingImage(mediaTransfer, mediaDigestIndex, rIdWalker, imageFileWalker, path,
+                    (newRId, media) -> partRepair.getNewRelationships().add(ImmutablePair.of(newRId, media)));
+            if (rId == null) {
+                continue;
+            }
 
-                createNewRelationship(relDoc, rId, imageFile);
-                updateGraphics(doc, rId, path);
+            Deque<RId> rIds = partRepair.getReplacements().computeIfAbsent(name, key -> new ArrayDeque<>());
+            for (int i = 0; i < missingImageCount; i++) {
+                rIds.add(rId);
             }
+            imagesAdded += missingImageCount;
+            mediaTransfer.done(path);
+        }
+        return imagesAdded;
+    }
+
+    static int countNewRelationships(MediaTransfer mediaTransfer, MediaDigestIndex mediaDigestIndex, Map<String, Integer> missingImageCounts, List<Path> missingImages) throws IOException {
+        RepairJournal journal = mediaTransfer.getJournal();
+        if (journal != null && journal.isResuming()) {
+            return 0;
+        }
 
-            Path doneFile = Path.of("data/done", path.getFileName().toString());
-            System.out.println("Done with " + path);
-            Files.move(path, doneFile);
-        } catch (IOException | XPathExpressionException ex) {
+        // every distinct content without a relationship gets exactly one new relationship
+        Set<String> digests = new HashSet<>();
+        for (Path path : missingImages) {
+            if (missingImageCounts.getOrDefault(path.getFileName().toString(), 0) > 0) {
+                String digest = mediaDigestIndex.digest(path);
+                if (mediaDigestIndex.findRelation(digest) == null) {
+                    digests.add(digest);
+                }
+            }
+        }
+        return digests.size();
+    }
+
+    static void rewritePart(DocumentPackage documentPackage, PartRepair partRepair) throws IOException, XMLStreamException {
+        Path partFile = documentPackage.newTempFile(partRepair.getPart());
+        try (InputStream in = documentPackage.openPart(partRepair.getPart());
+             OutputStream out = StreamingRewriter.newOutputStream(partFile)) {
+            StreamingRewriter.rewriteDocument(in, out, "rId7", partRepair.getReplacements());
+        }
+
+        Path relationsFile = documentPackage.newTempFile(partRepair.getRelationsPart());
+        try (InputStream in = documentPackage.openPart(partRepair.getRelationsPart());
+             OutputStream out = StreamingRewriter.newOutputStream(relationsFile)) {
+            StreamingRewriter.rewriteRelations(in, out, partRepair.getNewRelationships());
+        }
+
+        documentPackage.replacePart(partRepair.getRelationsPart(), relationsFile);
+        documentPackage.replacePart(partRepair.getPart(), partFile);
+    }
+
+    static int addMissingImages(Document doc, Document relDoc, RIdWalker rIdWalker, ImageFileWalker imageFileWalker, MediaDigestIndex mediaDigestIndex, Path missingImagesFolder, MediaTransfer mediaTransfer) throws Exception {
+        BlipIndex blipIndex = BlipIndex.build(doc, "rId7");
+
+        try (Stream<Path> paths = Files.list(missingImagesFolder)) {
+            return paths
+                    .filter(path -> isImageMissing(blipIndex, path))
+                    .map(path -> ImmutableTriple.of(path, rIdWalker, imageFileWalker))
+                    .mapToInt(pair -> addMissingImage(mediaTransfer, blipIndex, mediaDigestIndex, relDoc, pair.getMiddle(), pair.getRight(), pair.getLeft()))
+                    .sum();
+        }
+    }
+
+    static int addMissingImage(MediaTransfer mediaTransfer, BlipIndex blipIndex, MediaDigestIndex mediaDigestIndex, Document relDoc, RIdWalker rIdWalker, ImageFileWalker imageFileWalker, Path path) {
+        int missingImageCount = imageMissingCount(blipIndex, path);
+
+        debug(path.getFileName() + " is missing " + missingImageCount + " times");
+
+        try {
+            RId rId = placeMissingImage(mediaTransfer, mediaDigestIndex, rIdWalker, imageFileWalker, path,
+                    (newRId, target) -> createNewRelationship(relDoc, newRId, target));
+            if (rId == null) {
+                return 0;
+            }
+
+            for (int i = 0; i < missingImageCount; i++) {
+                debug(path.getFileName() + " will get " + rId.getrId() + " on index " + i);
+                updateGraphics(blipIndex, rId, path);
+            }
+
+            mediaTransfer.done(path);
+            return missingImageCount;
+        } catch (IOException ex) {
             throw new RuntimeException(ex);
         }
     }
 
-    static void updateGraphics(Document doc, RId rId, Path path) throws XPathExpressionException {
-        XPath xPath = XPathFactory.newInstance().newXPath();
-        xPath.setNamespaceContext(getNamespaceContext());
+    static RId placeMissingImage(MediaTransfer mediaTransfer, MediaDigestIndex mediaDigestIndex, RIdWalker rIdWalker, ImageFileWalker imageFileWalker, Path path, BiConsumer<RId, String> newRelationship) throws IOException {
+        RepairJournal journal = mediaTransfer.getJournal();
+        if (journal != null && journal.isResuming()) {
+            return journal.replay(path, mediaTransfer, mediaDigestIndex, newRelationship);
+        }
+
+        String digest = mediaDigestIndex.digest(path);
+
+        RId rId = mediaDigestIndex.findRelation(digest);
+        if (rId != null) {
+            debug(path.getFileName() + " has the same content as relationship " + rId.getrId());
+            if (journal != null) {
+                journal.placed(path, rId, mediaDigestIndex.findMedia(digest), null, false);
+            }
+            return rId;
+        }
+
+        String target = mediaDigestIndex.findMedia(digest);
+        String targetPart = null;
+        if (target == null) {
+            ImageFile imageFile = imageFileWalker.next(getExtension(path));
+            targetPart = DocumentPackage.MEDIA_FOLDER + imageFile.getFilename();
+            debug("Planning copy of " + path + " to " + targetPart);
+            mediaTransfer.plan(path, targetPart);
+            target = String.format("media/%s", imageFile.getFilename());
+        } else {
+            debug(path.getFileName() + " has the same content as " + target);
+        }
+
+        rId = rIdWalker.next();
+        newRelationship.accept(rId, target);
+        mediaDigestIndex.register(digest, target, rId);
+        if (journal != null) {
+            journal.placed(path, rId, target, targetPart, true);
+        }
+        return rId;
+    }
 
-        XPathExpression idXPathExpression = xPath.compile(String.format("//a:graphic/a:graphicData/pic:pic[pic:nvPicPr/pic:cNvPr/@name=\"%s\"]/pic:blipFill/a:blip[@r:embed=\"rId7\"]", path.getFileName()));
-        Element blibElement = (Element) idXPathExpression.evaluate(doc, NODE);
-        blibElement.setAttributeNS("http://schemas.openxmlformats.org/officeDocument/2006/relationships", "embed", rId.getrId());
+    static void updateGraphics(BlipIndex blipIndex, RId rId, Path path) {
+        blipIndex.update(path.getFileName().toString(), rId.getrId());
     }
 
     static void createNewRelationship(Document relDoc, RId rId, ImageFile imageFile) {
-        System.out.println("Creating new relationship " + rId.getrId() + " " + imageFile.getFilename());
+        createNewRelationship(relDoc, rId, String.format("media/%s", imageFile.getFilename()));
+    }
+
+    static void createNewRelationship(Document relDoc, RId rId, String target) {
+        debug("Creating new relationship " + rId.getrId() + " " + target);
         Element newRelationship = relDoc.createElementNS("http://schemas.openxmlformats.org/package/2006/relationships", "Relationship");
         newRelationship.setAttribute("Id", rId.getrId());
         newRelationship.setAttribute("Type", "http://schemas.openxmlformats.org/officeDocument/2006/relationships/image");
-        newRelationship.setAttribute("Target", String.format("media/%s", imageFile.getFilename()));
+        newRelationship.setAttribute("Target", target);
         relDoc.getDocumentElement().appendChild(newRelationship);
     }
 
@@ -168,65 +570,80 @@ public class FixImages {
         return dbf;
     }
 
-    static ImageFile getMaxImageFile() throws IOException {
-        List<ImageFile> imagesFiles = Files.list(Path.of("data/working/word/media"))
-                .map(Path::getFileName)
-                .map(Path::toString)
-                .map(ImageFile::new)
-                .collect(Collectors.toList());
-        System.out.println("Finding max image file over " + imagesFiles.size() + " images ");
-
-        ImageFile maxImageFile = null;
-        for(ImageFile imageFile: imagesFiles) {
-            if (maxImageFile == null) {
-                maxImageFile = imageFile;
-            } else if (imageFile.isLargerThen(maxImageFile)) {
-                maxImageFile = imageFile;
+    static IdAllocator getImageFileAllocator(DocumentPackage documentPackage, boolean reuseGaps) throws IOException {
+        List<String> mediaNames = documentPackage.listMedia();
+        IdAllocator allocator = new IdAllocator(reuseGaps);
+
+        for (String mediaName : mediaNames) {
+            Matcher m = IMAGE_FILENAME_PATTERN.matcher(mediaName);
+            if (m.find()) {
+                allocator.markUsed(Integer.parseInt(m.group(1)));
             }
         }
 
-        System.out.println("Found " + maxImageFile);
-        return maxImageFile;
+        System.out.println("Image file numbers over " + mediaNames.size() + " images: " + allocator);
+        return allocator;
     }
 
-    static RId getMaxRId(Document relDoc) throws XPathExpressionException {
-        XPath xPath = XPathFactory.newInstance().newXPath();
-        xPath.setNamespaceContext(getNamespaceContext());
+    static IdAllocator getRIdAllocator(Document relDoc, Document doc, String relationId, boolean reuseGaps) {
+        NodeList relNodeList = relDoc.getElementsByTagNameNS("http://schemas.openxmlformats.org/package/2006/relationships", "Relationship");
+        IdAllocator allocator = new IdAllocator(reuseGaps);
+
+        for (int i = 0; i < relNodeList.getLength(); i++) {
+            markRIdUsed(allocator, ((Element) relNodeList.item(i)).getAttribute("Id"));
+        }
+        // ids the document refers to without a relationship are not free, the placeholder is one of them
+        markRIdUsed(allocator, relationId);
+        NodeList blipNodeList = doc.getElementsByTagNameNS(DocumentScanner.DRAWINGML_NS, "blip");
+        for (int i = 0; i < blipNodeList.getLength(); i++) {
+            markRIdUsed(allocator, ((Element) blipNodeList.item(i)).getAttributeNS(DocumentScanner.RELATIONSHIPS_NS, "embed"));
+        }
 
-        XPathExpression idXPathExpression = xPath.compile("//pr:Relationship/@Id");
-        NodeList nodeSet = (NodeList) idXPathExpression.evaluate(relDoc, NODESET);
-        System.out.println("Finding max rId over " + nodeSet.getLength() + " relation nodes");
+        System.out.println("Relation ids over " + relNodeList.getLength() + " relation nodes: " + allocator);
+        return allocator;
+    }
 
-        RId rId = null;
-        for (int i = 0; i < nodeSet.getLength(); i++) {
-            RId tempRId = new RId(nodeSet.item(i).getTextContent());
-            if (rId == null || tempRId.isLargerThen(rId)) {
-                rId = tempRId;
+    static boolean hasRelation(Document relDoc, String rId) {
+        NodeList relNodeList = relDoc.getElementsByTagNameNS("http://schemas.openxmlformats.org/package/2006/relationships", "Relationship");
+        for (int i = 0; i < relNodeList.getLength(); i++) {
+            if (rId.equals(((Element) relNodeList.item(i)).getAttribute("Id"))) {
+                return true;
             }
         }
+        return false;
+    }
 
-        System.out.println("Found " + rId);
-        return rId;
+    static void markRIdUsed(IdAllocator allocator, String rId) {
+        Matcher m = RID_PATTERN.matcher(rId);
+        if (m.find()) {
+            allocator.markUsed(Integer.parseInt(m.group(2)));
+        }
     }
 
-    static boolean isImageMissing(Document doc, Path path) {
-        return imageMissingCount(doc, path) >= 1.0;
+    static String getExtension(Path path) throws IOException {
+        String filename = path.getFileName().toString();
+        int index = filename.lastIndexOf('.');
+        String extension = index < 0 || index == filename.length() - 1 ? "jpeg" : filename.substring(index + 1).toLowerCase();
+
+        ImageInfo imageInfo = ImageProbe.probe(path);
+        if (imageInfo == null) {
+            debug(filename + " has an unknown image format");
+            return extension;
+        }
+
+        debug(filename + " is " + imageInfo);
+        return imageInfo.getFormat() == ImageFormat.fromExtension(extension) ? extension : imageInfo.getFormat().getExtension();
     }
 
-    static double imageMissingCount(Document doc, Path path) {
-        XPath xPath = XPathFactory.newInstance().newXPath();
-        xPath.setNamespaceContext(getNamespaceContext());
+    static boolean isImageMissing(BlipIndex blipIndex, Path path) {
+        return imageMissingCount(blipIndex, path) >= 1;
+    }
 
-        XPathExpression countXPathExpression = null;
-        try {
-            countXPathExpression = xPath.compile(String.format("count(//a:graphic/a:graphicData/pic:pic[pic:nvPicPr/pic:cNvPr/@name=\"%s\"]/pic:blipFill/a:blip[@r:embed=\"rId7\"])", path.getFileName()));
-            double count = (Double) countXPathExpression.evaluate(doc, NUMBER);
+    static int imageMissingCount(BlipIndex blipIndex, Path path) {
+        int count = blipIndex.count(path.getFileName().toString());
 
-            System.out.println(path.getFileName() + " is missing: " + count);
-            return count;
-        } catch (XPathExpressionException ex) {
-            throw new RuntimeException(ex);
-        }
+        debug(path.getFileName() + " is missing: " + count);
+        return count;
     }
 
     static NamespaceContext getNamespaceContext() {
@@ -282,15 +699,34 @@ public class FixImages {
         };
     }
 
-    static List<Graphic> parseGraphics(Document doc) throws XPathExpressionException {
-        XPath xPath = XPathFactory.newInstance().newXPath();
-        xPath.setNamespaceContext(getNamespaceContext());
+    static List<String> parseEmbeddedRelationIds(Document doc) throws XPathExpressionException {
+        NodeList nodeList;
+        try (ResourcePool.Lease<CompiledXPaths> xPaths = XPATHS.acquire()) {
+            nodeList = (NodeList) xPaths.get().getBlips().evaluate(doc.getDocumentElement(), NODESET);
+        }
+        RunMetrics.get().increment(RunMetrics.XPATH_EVALUATIONS);
+        RunMetrics.get().add(RunMetrics.NODES_SCANNED, nodeList.getLength());
+        System.out.println(String.format("%d blip nodes found", nodeList.getLength()));
 
-        XPathExpression graphicXPathExpression = xPath.compile("//a:graphic");
-        XPathExpression pictureXPathExpression = xPath.compile(".//pic:cNvPr");
-        XPathExpression blipXPathExpression = xPath.compile(".//a:blip");
+        List<String> embeddedRelationIds = new ArrayList<>();
+        for (int i = 0; i < nodeList.getLength(); i++) {
+            Node node = nodeList.item(i);
+            Node embed = node.getAttributes().getNamedItemNS("http://schemas.openxmlformats.org/officeDocument/2006/relationships", "embed");
+            embeddedRelationIds.add(embed.getTextContent());
+        }
+        return embeddedRelationIds;
+    }
 
+    static List<Graphic> parseGraphics(Document doc) throws XPathExpressionException {
+        try (ResourcePool.Lease<CompiledXPaths> xPaths = XPATHS.acquire()) {
+            return parseGraphics(doc, xPaths.get().getGraphics(), xPaths.get().getGraphicPicture(), xPaths.get().getGraphicBlip());
+        }
+    }
+
+    static List<Graphic> parseGraphics(Document doc, XPathExpression graphicXPathExpression, XPathExpression pictureXPathExpression, XPathExpression blipXPathExpression) throws XPathExpressionException {
         NodeList graphicNodeList = (NodeList) graphicXPathExpression.evaluate(doc.getDocumentElement(), NODESET);
+        RunMetrics.get().increment(RunMetrics.XPATH_EVALUATIONS);
+        RunMetrics.get().add(RunMetrics.NODES_SCANNED, graphicNodeList.getLength());
 
         System.out.println(String.format("%d graphics found", graphicNodeList.getLength()));
 
@@ -301,33 +737,52 @@ public class FixImages {
 
             Node pictureNode = (Node) pictureXPathExpression.evaluate(graphicNode, NODE);
             Node blipNode = (Node) blipXPathExpression.evaluate(graphicNode, NODE);
+            RunMetrics.get().add(RunMetrics.XPATH_EVALUATIONS, 2);
             if (pictureNode != null && blipNode != null) {
                 Node nameNode = pictureNode.getAttributes().getNamedItem("name");
                 Node embedNode = blipNode.getAttributes().getNamedItemNS("http://schemas.openxmlformats.org/officeDocument/2006/relationships", "embed");
 
-                graphics.add(new Graphic(i, embedNode.getTextContent(), nameNode.getTextContent()));
+                Element extentElement = getExtentElement(graphicNode);
+                graphics.add(new Graphic(i, embedNode.getTextContent(), nameNode.getTextContent(),
+                        extentElement == null ? 0 : DocumentScanner.parseExtent(extentElement.getAttribute("cx")),
+                        extentElement == null ? 0 : DocumentScanner.parseExtent(extentElement.getAttribute("cy"))));
             }
         }
 
         return graphics;
     }
 
-    static List<String> parseMediaFiles() {
+    static Element getExtentElement(Node graphicNode) {
+        Node parent = graphicNode.getParentNode();
+        if (parent == null) {
+            return null;
+        }
+
+        for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (DocumentScanner.WORDPROCESSING_DRAWING_NS.equals(child.getNamespaceURI()) && "extent".equals(child.getLocalName())) {
+                return (Element) child;
+            }
+        }
+        return null;
+    }
+
+    static List<String> parseMediaFiles(DocumentPackage documentPackage) throws IOException {
         List<String> mediaFiles = new ArrayList<>();
 
-        Arrays.stream(new File("data/working/word/media").listFiles())
-                .forEach(file -> mediaFiles.add("media/" + file.getName()));
+        documentPackage.listMedia()
+                .forEach(name -> mediaFiles.add("media/" + name));
 
         System.out.println(String.format("%d media files found", mediaFiles.size()));
         return mediaFiles;
     }
 
     static List<String> parsePictures(Document doc) throws XPathExpressionException {
-        XPath pictureXPath = XPathFactory.newInstance().newXPath();
-        pictureXPath.setNamespaceContext(getNamespaceContext());
-
-        XPathExpression pictureXPathExpression = pictureXPath.compile("//pic:cNvPr");
-        NodeList pictureNodeList = (NodeList) pictureXPathExpression.evaluate(doc.getDocumentElement(), NODESET);
+        NodeList pictureNodeList;
+        try (ResourcePool.Lease<CompiledXPaths> xPaths = XPATHS.acquire()) {
+            pictureNodeList = (NodeList) xPaths.get().getPictures().evaluate(doc.getDocumentElement(), NODESET);
+        }
+        RunMetrics.get().increment(RunMetrics.XPATH_EVALUATIONS);
+        RunMetrics.get().add(RunMetrics.NODES_SCANNED, pictureNodeList.getLength());
 
         System.out.println(String.format("%d pictures found", pictureNodeList.getLength()));
 
@@ -344,11 +799,16 @@ public class FixImages {
     }
 
     static Map<String, String> parseRelations(Document relDoc) throws ParserConfigurationException, XPathExpressionException, IOException, SAXException {
-        XPath relXpath = XPathFactory.newInstance().newXPath();
-        relXpath.setNamespaceContext(getNamespaceContext());
+        return parseRelations(relDoc, new ArrayList<>());
+    }
 
-        XPathExpression relXPathExpression = relXpath.compile("//pr:Relationship");
-        NodeList relNodeList = (NodeList) relXPathExpression.evaluate(relDoc.getDocumentElement(), NODESET);
+    static Map<String, String> parseRelations(Document relDoc, Collection<String> nullTargetRelationIds) throws ParserConfigurationException, XPathExpressionException, IOException, SAXException {
+        NodeList relNodeList;
+        try (ResourcePool.Lease<CompiledXPaths> xPaths = XPATHS.acquire()) {
+            relNodeList = (NodeList) xPaths.get().getRelationships().evaluate(relDoc.getDocumentElement(), NODESET);
+        }
+        RunMetrics.get().increment(RunMetrics.XPATH_EVALUATIONS);
+        RunMetrics.get().add(RunMetrics.NODES_SCANNED, relNodeList.getLength());
 
         System.out.println(String.format("%d relation nodes found", relNodeList.getLength()));
 
@@ -360,7 +820,8 @@ public class FixImages {
             Node targetNode = relNode.getAttributes().getNamedItem("Target");
 
             if (targetNode.getNodeValue().toUpperCase().equals("NULL")) {
-                System.err.println(idNode.getTextContent() + " has a NULL target");
+                debug(idNode.getTextContent() + " has a NULL target");
+                nullTargetRelationIds.add(idNode.getTextContent());
             } else {
                 relations.put(idNode.getTextContent(), targetNode.getTextContent());
             }
@@ -370,8 +831,7 @@ public class FixImages {
     }
 
     static int parseImageFilename(String filename) {
-        Pattern imageFilenamePattern = Pattern.compile("^image(\\d+)\\.");
-        Matcher m = imageFilenamePattern.matcher(filename);
+        Matcher m = IMAGE_FILENAME_PATTERN.matcher(filename);
 
         m.find();
 
@@ -379,8 +839,7 @@ public class FixImages {
     }
 
     static int parseRIdValue(String rId) {
-        Pattern rIdPattern = Pattern.compile("^(rId)(\\d+)$");
-        Matcher m = rIdPattern.matcher(rId);
+        Matcher m = RID_PATTERN.matcher(rId);
 
         m.find();
 
@@ -389,142 +848,14 @@ public class FixImages {
 
     static void saveDocument(Document doc, File xmlFile) throws TransformerException, IOException {
         System.out.println("Storing document " + xmlFile);
-        TransformerFactory tf = TransformerFactory.newDefaultInstance();
-        tf.newTransformer().transform(new DOMSource(doc), new StreamResult(new FileWriter(xmlFile)));
-    }
-}
-
-class Graphic {
-
-    private int index;
-    private String relationId;
-    private String filename;
-
-    public Graphic(int index, String relationId, String filename) {
-        this.index = index;
-        this.relationId = relationId;
-        this.filename = filename;
-    }
-
-    public int getIndex() {
-        return index;
-    }
-
-    public String getRelationId() {
-        return relationId;
-    }
-
-    public String getFilename() {
-        return filename;
-    }
-}
-
-class ImageFile {
-
-    private String filename;
-    private int idValue;
-
-    public ImageFile(String filename) {
-        this.filename = filename;
-        this.idValue = FixImages.parseImageFilename(filename);
-    }
-
-    public ImageFile(int idValue) {
-        this.filename = String.format("image%d.jpeg", idValue);
-        this.idValue = idValue;
-    }
-
-    public String getFilename() {
-        return filename;
-    }
-
-    public int getIdValue() {
-        return idValue;
-    }
-
-    public boolean isLargerThen(ImageFile otherImageFile) {
-        return this.idValue > otherImageFile.getIdValue();
-    }
-
-    @Override
-    public String toString() {
-        return String.format("%s %d", filename, idValue);
-    }
-
-    public static ImageFile next(ImageFile imageFile) {
-        return new ImageFile(imageFile.getIdValue() + 1);
-    }
-}
-
-class ImageFileWalker {
-
-    private ImageFile imageFile;
-
-    public ImageFileWalker(ImageFile imageFile) {
-        this.imageFile = imageFile;
-    }
-
-    public ImageFile current() {
-        return imageFile;
-    }
-
-    public ImageFile next() {
-        imageFile = ImageFile.next(imageFile);
-        return imageFile;
-    }
-}
-
-class RId {
-
-    private final String rId;
-    private final int idValue;
-
-    public RId(String rId) {
-        this.rId = rId;
-        this.idValue = FixImages.parseRIdValue(this.rId);
-    }
-
-    public RId(int idValue) {
-        this.rId = String.format("rId%d", idValue);
-        this.idValue = idValue;
-    }
-
-    public String getrId() {
-        return rId;
-    }
-
-    public int getIdValue() {
-        return idValue;
-    }
-
-    public boolean isLargerThen(RId otherRId) {
-        return this.idValue > otherRId.getIdValue();
-    }
-
-    @Override
-    public String toString() {
-        return String.format("%s %d", rId, idValue);
-    }
-
-    public static RId next(RId rId) {
-        return new RId(rId.getIdValue() + 1);
-    }
-}
-
-class RIdWalker {
-
-    private RId rId;
-
-    public RIdWalker(RId rId) {
-        this.rId = rId;
-    }
-
-    public RId current() {
-        return rId;
+        try (OutputStream out = StreamingRewriter.newOutputStream(xmlFile.toPath())) {
+            saveDocument(doc, out);
+        }
     }
 
-    public RId next() {
-        rId = RId.next(rId);
-        return rId;
+    static void saveDocument(Document doc, OutputStream out) throws TransformerException {
+        try (ResourcePool.Lease<Transformer> transformer = TRANSFORMERS.acquire()) {
+            transformer.get().transform(new DOMSource(doc), new StreamResult(out));
+        }
     }
 }
@@ -0,0 +1,42 @@
+package ninckblokje.document;
+
+class Graphic {
+
+    private int index;
+    private String relationId;
+    private String filename;
+    private long extentCx;
+    private long extentCy;
+
+    public Graphic(int index, String relationId, String filename) {
+        this(index, relationId, filename, 0, 0);
+    }
+
+    public Graphic(int index, String relationId, String filename, long extentCx, long extentCy) {
+        this.index = index;
+        this.relationId = relationId;
+        this.filename = filename;
+        this.extentCx = extentCx;
+        this.extentCy = extentCy;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public String getRelationId() {
+        return relationId;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public long getExtentCx() {
+        return extentCx;
+    }
+
+    public long getExtentCy() {
+        return extentCy;
+    }
+}
@@ -0,0 +1,91 @@
+package ninckblokje.document;
+
+import java.util.Arrays;
+
+class IdAllocator {
+
+    private final boolean reuseGaps;
+    private long[] words;
+    private int max;
+    private int cursor;
+    private int used;
+
+    public IdAllocator(boolean reuseGaps) {
+        this.reuseGaps = reuseGaps;
+        this.words = new long[1];
+        this.max = 0;
+        this.cursor = 1;
+    }
+
+    static IdAllocator startingAfter(int max) {
+        IdAllocator allocator = new IdAllocator(false);
+        allocator.markUsed(max);
+        return allocator;
+    }
+
+    public synchronized void markUsed(int id) {
+        if (id < 1) {
+            return;
+        }
+
+        ensureCapacity(id);
+        long bit = 1L << id;
+        if ((words[id >>> 6] & bit) == 0) {
+            words[id >>> 6] |= bit;
+            used++;
+        }
+        if (id > max) {
+            max = id;
+        }
+    }
+
+    public synchronized int allocate() {
+        int id;
+        if (reuseGaps) {
+            id = nextClearBit(cursor);
+            cursor = id + 1;
+        } else {
+            id = max + 1;
+        }
+
+        markUsed(id);
+        return id;
+    }
+
+    public synchronized int[] reserve(int count) {
+        int[] ids = new int[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = allocate();
+        }
+        return ids;
+    }
+
+    private int nextClearBit(int from) {
+        int wordIndex = from >>> 6;
+        if (wordIndex >= words.length) {
+            return from;
+        }
+
+        long word = ~words[wordIndex] & (-1L << from);
+        while (word == 0) {
+            wordIndex++;
+            if (wordIndex == words.length) {
+                return wordIndex << 6;
+            }
+            word = ~words[wordIndex];
+        }
+        return (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    private void ensureCapacity(int id) {
+        int wordIndex = id >>> 6;
+        if (wordIndex >= words.length) {
+            words = Arrays.copyOf(words, Math.max(words.length * 2, wordIndex + 1));
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d used, max %d", used, max);
+    }
+}
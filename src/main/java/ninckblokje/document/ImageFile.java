@@ -0,0 +1,49 @@
+package ninckblokje.document;
+
+class ImageFile {
+
+    private String filename;
+    private int idValue;
+    private String extension;
+
+    public ImageFile(String filename) {
+        this.filename = filename;
+        this.idValue = FixImages.parseImageFilename(filename);
+        this.extension = filename.substring(filename.lastIndexOf('.') + 1);
+    }
+
+    public ImageFile(int idValue) {
+        this(idValue, "jpeg");
+    }
+
+    public ImageFile(int idValue, String extension) {
+        this.filename = String.format("image%d.%s", idValue, extension);
+        this.idValue = idValue;
+        this.extension = extension;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public int getIdValue() {
+        return idValue;
+    }
+
+    public boolean isLargerThen(ImageFile otherImageFile) {
+        return this.idValue > otherImageFile.getIdValue();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %d", filename, idValue);
+    }
+
+    public static ImageFile next(ImageFile imageFile) {
+        return new ImageFile(imageFile.getIdValue() + 1, imageFile.getExtension());
+    }
+}
@@ -0,0 +1,29 @@
+package ninckblokje.document;
+
+class ImageFileWalker {
+
+    private final IdAllocator allocator;
+    private ImageFile imageFile;
+
+    public ImageFileWalker(ImageFile imageFile) {
+        this.allocator = IdAllocator.startingAfter(imageFile.getIdValue());
+        this.imageFile = imageFile;
+    }
+
+    public ImageFileWalker(IdAllocator allocator) {
+        this.allocator = allocator;
+    }
+
+    public ImageFile current() {
+        return imageFile;
+    }
+
+    public ImageFile next() {
+        return next(imageFile == null ? "jpeg" : imageFile.getExtension());
+    }
+
+    public ImageFile next(String extension) {
+        imageFile = new ImageFile(allocator.allocate(), extension);
+        return imageFile;
+    }
+}
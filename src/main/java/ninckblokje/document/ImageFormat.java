@@ -0,0 +1,41 @@
+package ninckblokje.document;
+
+enum ImageFormat {
+
+    PNG("png", "image/png"),
+    JPEG("jpeg", "image/jpeg"),
+    GIF("gif", "image/gif"),
+    BMP("bmp", "image/bmp"),
+    EMF("emf", "image/x-emf"),
+    WMF("wmf", "image/x-wmf");
+
+    private final String extension;
+    private final String contentType;
+
+    ImageFormat(String extension, String contentType) {
+        this.extension = extension;
+        this.contentType = contentType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    static ImageFormat fromExtension(String extension) {
+        String lowerCase = extension.toLowerCase();
+        if ("jpg".equals(lowerCase) || "jpe".equals(lowerCase)) {
+            return JPEG;
+        }
+
+        for (ImageFormat format : values()) {
+            if (format.extension.equals(lowerCase)) {
+                return format;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,31 @@
+package ninckblokje.document;
+
+class ImageInfo {
+
+    private final ImageFormat format;
+    private final int width;
+    private final int height;
+
+    public ImageInfo(ImageFormat format, int width, int height) {
+        this.format = format;
+        this.width = width;
+        this.height = height;
+    }
+
+    public ImageFormat getFormat() {
+        return format;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %dx%d", format.getExtension(), width, height);
+    }
+}
@@ -0,0 +1,109 @@
+package ninckblokje.document;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+class ImageProbe {
+
+    static final int HEADER_SIZE = 512;
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+    private static final int EMF_SIGNATURE = 0x464D4520;
+    private static final int WMF_PLACEABLE_KEY = 0x9AC6CDD7;
+
+    static ImageInfo probe(Path path) throws IOException {
+        try (InputStream in = RunMetrics.get().countRead(Files.newInputStream(path))) {
+            return probe(in);
+        }
+    }
+
+    static ImageInfo probe(InputStream in) throws IOException {
+        byte[] header = in.readNBytes(HEADER_SIZE);
+        ByteBuffer bigEndian = ByteBuffer.wrap(header).order(ByteOrder.BIG_ENDIAN);
+        ByteBuffer littleEndian = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+
+        if (header.length >= 24 && startsWith(header, PNG_SIGNATURE)) {
+            return new ImageInfo(ImageFormat.PNG, bigEndian.getInt(16), bigEndian.getInt(20));
+        }
+        if (header.length >= 10 && (startsWith(header, "GIF87a".getBytes()) || startsWith(header, "GIF89a".getBytes()))) {
+            return new ImageInfo(ImageFormat.GIF, Short.toUnsignedInt(littleEndian.getShort(6)), Short.toUnsignedInt(littleEndian.getShort(8)));
+        }
+        if (header.length >= 3 && (header[0] & 0xff) == 0xff && (header[1] & 0xff) == 0xd8 && (header[2] & 0xff) == 0xff) {
+            return probeJpeg(new SequenceInputStream(new ByteArrayInputStream(header), in));
+        }
+        if (header.length >= 26 && header[0] == 'B' && header[1] == 'M') {
+            if (littleEndian.getInt(14) == 12) {
+                return new ImageInfo(ImageFormat.BMP, Short.toUnsignedInt(littleEndian.getShort(18)), Short.toUnsignedInt(littleEndian.getShort(20)));
+            }
+            return new ImageInfo(ImageFormat.BMP, littleEndian.getInt(18), Math.abs(littleEndian.getInt(22)));
+        }
+        if (header.length >= 44 && littleEndian.getInt(0) == 1 && littleEndian.getInt(40) == EMF_SIGNATURE) {
+            return new ImageInfo(ImageFormat.EMF, littleEndian.getInt(16) - littleEndian.getInt(8) + 1, littleEndian.getInt(20) - littleEndian.getInt(12) + 1);
+        }
+        if (header.length >= 22 && littleEndian.getInt(0) == WMF_PLACEABLE_KEY) {
+            int unitsPerInch = Short.toUnsignedInt(littleEndian.getShort(14));
+            int width = littleEndian.getShort(10) - littleEndian.getShort(6);
+            int height = littleEndian.getShort(12) - littleEndian.getShort(8);
+            return unitsPerInch == 0 ? new ImageInfo(ImageFormat.WMF, -1, -1) : new ImageInfo(ImageFormat.WMF, width * 96 / unitsPerInch, height * 96 / unitsPerInch);
+        }
+        if (header.length >= 18 && (littleEndian.getShort(0) == 1 || littleEndian.getShort(0) == 2) && littleEndian.getShort(2) == 9) {
+            return new ImageInfo(ImageFormat.WMF, -1, -1);
+        }
+        return null;
+    }
+
+    private static ImageInfo probeJpeg(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        try {
+            data.skipNBytes(2);
+
+            while (true) {
+                int b = data.read();
+                if (b == -1) {
+                    break;
+                } else if (b != 0xff) {
+                    continue;
+                }
+
+                int marker = data.read();
+                while (marker == 0xff) {
+                    marker = data.read();
+                }
+                if (marker == -1 || marker == 0xd9 || marker == 0xda) {
+                    break;
+                } else if (marker == 0x01 || marker >= 0xd0 && marker <= 0xd8) {
+                    continue;
+                }
+
+                int length = data.readUnsignedShort();
+                if (marker >= 0xc0 && marker <= 0xcf && marker != 0xc4 && marker != 0xc8 && marker != 0xcc) {
+                    data.skipNBytes(1);
+                    int height = data.readUnsignedShort();
+                    int width = data.readUnsignedShort();
+                    return new ImageInfo(ImageFormat.JPEG, width, height);
+                }
+                data.skipNBytes(length - 2);
+            }
+        } catch (EOFException ex) {
+            // a truncated segment, the caller goes by the file name instead
+            return null;
+        }
+        return new ImageInfo(ImageFormat.JPEG, -1, -1);
+    }
+
+    private static boolean startsWith(byte[] bytes, byte[] prefix) {
+        if (bytes.length < prefix.length) {
+            return false;
+        }
+
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,143 @@
+package ninckblokje.document;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+class MediaDigestIndex {
+
+    private final PackageMedia packageMedia;
+    private final Map<String, RId> relationByMedia = new HashMap<>();
+    private final Set<String> relationIds = new HashSet<>();
+    private final Map<Path, String> sourceDigests;
+
+    public MediaDigestIndex() {
+        this(new PackageMedia(null), new HashMap<>());
+    }
+
+    private MediaDigestIndex(PackageMedia packageMedia, Map<Path, String> sourceDigests) {
+        this.packageMedia = packageMedia;
+        this.sourceDigests = sourceDigests;
+    }
+
+    static MediaDigestIndex build(DocumentPackage documentPackage, Map<String, String> relations) {
+        // the media is only hashed on the first lookup, a run without missing images never reads it
+        MediaDigestIndex index = new MediaDigestIndex(new PackageMedia(documentPackage), new HashMap<>());
+        index.indexRelations(relations);
+        return index;
+    }
+
+    public MediaDigestIndex forRelations(Map<String, String> relations) {
+        MediaDigestIndex index = new MediaDigestIndex(packageMedia, sourceDigests);
+        index.indexRelations(relations);
+        return index;
+    }
+
+    private void indexRelations(Map<String, String> relations) {
+        relations.forEach((id, target) -> {
+            relationIds.add(id);
+            if (id.matches("rId\\d+")) {
+                relationByMedia.merge(target, new RId(id), (existing, other) -> existing.isLargerThen(other) ? other : existing);
+            }
+        });
+    }
+
+    static String digest(InputStream in) throws IOException {
+        MessageDigest messageDigest = newMessageDigest();
+
+        byte[] buffer = new byte[64 * 1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            messageDigest.update(buffer, 0, read);
+        }
+
+        StringBuilder hex = new StringBuilder();
+        for (byte b : messageDigest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    public String digest(Path source) throws IOException {
+        String digest = sourceDigests.get(source);
+        if (digest == null) {
+            try (InputStream in = RunMetrics.get().countRead(Files.newInputStream(source))) {
+                digest = digest(in);
+            }
+            sourceDigests.put(source, digest);
+        }
+        return digest;
+    }
+
+    public String findMedia(String digest) throws IOException {
+        List<String> media = packageMedia.get().get(digest);
+        return media == null ? null : media.get(0);
+    }
+
+    public RId findRelation(String digest) throws IOException {
+        for (String media : packageMedia.get().getOrDefault(digest, Collections.emptyList())) {
+            RId rId = relationByMedia.get(media);
+            if (rId != null) {
+                return rId;
+            }
+        }
+        return null;
+    }
+
+    public boolean hasRelation(RId rId) {
+        return relationIds.contains(rId.getrId());
+    }
+
+    public void register(String digest, String target, RId rId) throws IOException {
+        List<String> media = packageMedia.get().computeIfAbsent(digest, key -> new ArrayList<>());
+        if (!media.contains(target)) {
+            media.add(target);
+        }
+        relationByMedia.putIfAbsent(target, rId);
+        relationIds.add(rId.getrId());
+    }
+
+    boolean isIndexed() {
+        return packageMedia.isIndexed();
+    }
+
+    private static MessageDigest newMessageDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static class PackageMedia {
+
+        private final Map<String, List<String>> mediaByDigest = new HashMap<>();
+        private DocumentPackage documentPackage;
+
+        PackageMedia(DocumentPackage documentPackage) {
+            this.documentPackage = documentPackage;
+        }
+
+        synchronized Map<String, List<String>> get() throws IOException {
+            if (documentPackage != null) {
+                for (String name : documentPackage.listMedia()) {
+                    try (InputStream in = documentPackage.openPart(DocumentPackage.MEDIA_FOLDER + name)) {
+                        mediaByDigest.computeIfAbsent(digest(in), key -> new ArrayList<>()).add("media/" + name);
+                    }
+                }
+                documentPackage = null;
+
+                System.out.println(String.format("Indexed %d distinct media digests", mediaByDigest.size()));
+            }
+            return mediaByDigest;
+        }
+
+        synchronized boolean isIndexed() {
+            return documentPackage == null;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package ninckblokje.document;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+
+class MediaDownscaler {
+
+    static final long EMU_PER_INCH = 914400;
+
+    private final int dpi;
+    private final int decodeMemoryKb;
+    private final Semaphore decodeMemory;
+
+    public MediaDownscaler(int dpi, long decodeMemory) {
+        this.dpi = dpi;
+        this.decodeMemoryKb = (int) Math.max(1, Math.min(Integer.MAX_VALUE, decodeMemory / 1024));
+        this.decodeMemory = new Semaphore(decodeMemoryKb);
+    }
+
+    static void addRequiredExtents(Map<String, long[]> extents, Collection<Graphic> graphics, String relationId) {
+        for (Graphic graphic : graphics) {
+            if (relationId.equals(graphic.getRelationId()) && graphic.getExtentCx() > 0 && graphic.getExtentCy() > 0) {
+                extents.merge(graphic.getFilename(), new long[]{graphic.getExtentCx(), graphic.getExtentCy()}, MediaDownscaler::largest);
+            }
+        }
+    }
+
+    static long[] largest(long[] extent, long[] other) {
+        return new long[]{Math.max(extent[0], other[0]), Math.max(extent[1], other[1])};
+    }
+
+    public long downscale(MediaTransfer mediaTransfer, Map<String, long[]> extents, Path missingImagesFolder, int threads) throws IOException, InterruptedException {
+        // placeholders with the same content share one transfer, so it has to fit the largest of their extents
+        Map<String, String> digests = new HashMap<>();
+        Map<String, long[]> extentsByDigest = new HashMap<>();
+        for (Map.Entry<String, long[]> extent : extents.entrySet()) {
+            Path source = missingImagesFolder.resolve(extent.getKey());
+            if (Files.isRegularFile(source)) {
+                String digest;
+                try (InputStream in = Files.newInputStream(source)) {
+                    digest = MediaDigestIndex.digest(in);
+                }
+                digests.put(extent.getKey(), digest);
+                extentsByDigest.merge(digest, extent.getValue(), MediaDownscaler::largest);
+            }
+        }
+
+        List<Callable<Long>> tasks = new ArrayList<>();
+        for (ImmutablePair<Path, String> transfer : mediaTransfer.getTransfers()) {
+            String digest = digests.get(transfer.getLeft().getFileName().toString());
+            long[] extent = digest == null ? null : extentsByDigest.get(digest);
+            if (extent != null) {
+                tasks.add(() -> downscale(mediaTransfer, transfer.getLeft(), extent));
+            }
+        }
+
+        List<Long> saved = PackageScanner.invokeAll(tasks, threads);
+        long downscaled = saved.stream().filter(bytes -> bytes > 0).count();
+        long bytesSaved = saved.stream().mapToLong(Long::longValue).sum();
+
+        RunMetrics.get().add(RunMetrics.IMAGES_DOWNSCALED, downscaled);
+        RunMetrics.get().add(RunMetrics.BYTES_SAVED, bytesSaved);
+        System.out.println(String.format("%d media files downscaled, %d bytes saved", downscaled, bytesSaved));
+        return bytesSaved;
+    }
+
+    long downscale(MediaTransfer mediaTransfer, Path source, long[] extent) throws IOException, InterruptedException {
+        ImageInfo imageInfo = ImageProbe.probe(source);
+        if (imageInfo == null || imageInfo.getWidth() <= 0 || imageInfo.getHeight() <= 0
+                || imageInfo.getFormat() != ImageFormat.JPEG && imageInfo.getFormat() != ImageFormat.PNG) {
+            return 0;
+        }
+
+        int requiredWidth = getPixels(extent[0]);
+        int requiredHeight = getPixels(extent[1]);
+        double scale = Math.max((double) requiredWidth / imageInfo.getWidth(), (double) requiredHeight / imageInfo.getHeight());
+        if (scale >= 1) {
+            return 0;
+        }
+
+        int width = Math.max(1, (int) Math.ceil(imageInfo.getWidth() * scale));
+        int height = Math.max(1, (int) Math.ceil(imageInfo.getHeight() * scale));
+        int permits = (int) Math.min(decodeMemoryKb, Math.max(1, (long) imageInfo.getWidth() * imageInfo.getHeight() * 4 / 1024));
+
+        decodeMemory.acquire(permits);
+        try {
+            BufferedImage image;
+            try {
+                image = ImageIO.read(source.toFile());
+            } catch (IOException | RuntimeException ex) {
+                FixImages.debug(String.format("Copying %s unchanged, it could not be decoded: %s", source.getFileName(), ex.getMessage()));
+                return 0;
+            }
+            if (image == null) {
+                FixImages.debug(String.format("Copying %s unchanged, there is no decoder for it", source.getFileName()));
+                return 0;
+            }
+
+            Path resampled = Files.createTempFile("fix-images", "." + imageInfo.getFormat().getExtension());
+            write(resize(image, width, height, imageInfo.getFormat() == ImageFormat.PNG && image.getColorModel().hasAlpha()), imageInfo.getFormat(), resampled);
+
+            long saved = Files.size(source) - Files.size(resampled);
+            if (saved <= 0) {
+                Files.delete(resampled);
+                return 0;
+            }
+
+            FixImages.debug(String.format("Downscaled %s from %dx%d to %dx%d, %d bytes saved", source.getFileName(), imageInfo.getWidth(), imageInfo.getHeight(), width, height, saved));
+            mediaTransfer.resample(source, resampled);
+            return saved;
+        } finally {
+            decodeMemory.release(permits);
+        }
+    }
+
+    int getPixels(long emu) {
+        return (int) Math.ceil((double) emu * dpi / EMU_PER_INCH);
+    }
+
+    static BufferedImage resize(BufferedImage image, int width, int height, boolean alpha) {
+        int type = alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage resized = image;
+        int currentWidth = image.getWidth();
+        int currentHeight = image.getHeight();
+
+        do {
+            currentWidth = Math.max(width, currentWidth / 2);
+            currentHeight = Math.max(height, currentHeight / 2);
+
+            BufferedImage step = new BufferedImage(currentWidth, currentHeight, type);
+            Graphics2D graphics = step.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                graphics.drawImage(resized, 0, 0, currentWidth, currentHeight, null);
+            } finally {
+                graphics.dispose();
+            }
+            resized = step;
+        } while (currentWidth != width || currentHeight != height);
+
+        return resized;
+    }
+
+    static void write(BufferedImage image, ImageFormat format, Path target) throws IOException {
+        if (format == ImageFormat.PNG) {
+            ImageIO.write(image, "png", target.toFile());
+            return;
+        }
+
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(target.toFile())) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(0.85f);
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+}
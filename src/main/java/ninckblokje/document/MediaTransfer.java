@@ -0,0 +1,128 @@
+package ninckblokje.document;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+
+class MediaTransfer {
+
+    private final List<ImmutablePair<Path, String>> transfers = new ArrayList<>();
+    private final Set<Path> doneImages = new LinkedHashSet<>();
+    private final Map<Path, Path> resampledSources = new ConcurrentHashMap<>();
+    private final RepairJournal journal;
+
+    public MediaTransfer() {
+        this(null);
+    }
+
+    public MediaTransfer(RepairJournal journal) {
+        this.journal = journal;
+    }
+
+    public RepairJournal getJournal() {
+        return journal;
+    }
+
+    public void plan(Path source, String targetPart) {
+        transfers.add(ImmutablePair.of(source, targetPart));
+    }
+
+    public void done(Path source) {
+        doneImages.add(source);
+    }
+
+    public void resample(Path source, Path resampledSource) {
+        resampledSources.put(source, resampledSource);
+    }
+
+    public List<ImmutablePair<Path, String>> getTransfers() {
+        return transfers;
+    }
+
+    public Set<Path> getDoneImages() {
+        return doneImages;
+    }
+
+    public void execute(DocumentPackage documentPackage, int inFlight) throws IOException {
+        if (transfers.isEmpty()) {
+            return;
+        }
+
+        System.out.println(String.format("Transferring %d media files with %d in flight", transfers.size(), inFlight));
+        ExecutorService executorService = Executors.newFixedThreadPool(Math.max(1, Math.min(inFlight, transfers.size())));
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (ImmutablePair<Path, String> transfer : transfers) {
+                futures.add(executorService.submit(() -> {
+                    Path partFile = documentPackage.getPartFile(transfer.getRight());
+                    if (journal != null && journal.isResuming() && partFile != null) {
+                        // a copy that was interrupted before it got journaled is redone from scratch
+                        Files.deleteIfExists(partFile);
+                    }
+                    documentPackage.addPart(transfer.getRight(), resampledSources.getOrDefault(transfer.getLeft(), transfer.getLeft()));
+                    if (journal != null && partFile != null) {
+                        journal.copied(transfer.getRight());
+                    }
+                    return null;
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new IllegalStateException(ex.getCause());
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    public void moveDone(Path doneFolder) throws IOException {
+        for (Path resampledSource : resampledSources.values()) {
+            Files.deleteIfExists(resampledSource);
+        }
+
+        if (doneFolder == null) {
+            return;
+        }
+
+        for (Path path : doneImages) {
+            if (journal != null && (journal.isMoved(path) || !Files.exists(path))) {
+                continue;
+            }
+            FixImages.debug("Done with " + path);
+            Files.move(path, doneFolder.resolve(path.getFileName().toString()));
+            if (journal != null) {
+                journal.moved(path);
+            }
+        }
+    }
+
+    static void copy(Path source, Path target) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                position += in.transferTo(position, size - position, out);
+            }
+            RunMetrics.get().add(RunMetrics.BYTES_WRITTEN, size);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package ninckblokje.document;
+
+import java.util.*;
+
+class PackageScan {
+
+    private final List<PartScan> parts;
+
+    public PackageScan(List<PartScan> parts) {
+        this.parts = parts;
+    }
+
+    public List<PartScan> getParts() {
+        return parts;
+    }
+
+    public PartScan getPart(String part) {
+        return parts.stream()
+                .filter(partScan -> partScan.getPart().equals(part))
+                .findFirst()
+                .orElse(null);
+    }
+
+    public List<String> getEmbeddedRelationIds() {
+        List<String> embeddedRelationIds = new ArrayList<>();
+        for (PartScan partScan : parts) {
+            for (String relationId : partScan.getScan().getEmbeddedRelationIds()) {
+                embeddedRelationIds.add(PackageScanner.qualify(partScan.getPart(), relationId));
+            }
+        }
+        return embeddedRelationIds;
+    }
+
+    public Map<String, String> getRelations() {
+        Map<String, String> relations = new HashMap<>();
+        for (PartScan partScan : parts) {
+            partScan.getRelations().forEach((id, target) -> relations.put(PackageScanner.qualify(partScan.getPart(), id), target));
+        }
+        return relations;
+    }
+
+    public List<String> getNullTargetRelationIds() {
+        List<String> nullTargetRelationIds = new ArrayList<>();
+        for (PartScan partScan : parts) {
+            for (String relationId : partScan.getNullTargetRelationIds()) {
+                nullTargetRelationIds.add(PackageScanner.qualify(partScan.getPart(), relationId));
+            }
+        }
+        return nullTargetRelationIds;
+    }
+
+    public List<Graphic> getGraphics() {
+        PartScan document = getPart(DocumentPackage.DOCUMENT_PART);
+        return document == null ? Collections.emptyList() : document.getScan().getGraphics();
+    }
+}
@@ -0,0 +1,141 @@
+package ninckblokje.document;
+
+import org.w3c.dom.Document;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.*;
+
+class PackageScanner {
+
+    static List<String> discoverParts(DocumentPackage documentPackage) throws IOException {
+        List<String> parts = new ArrayList<>();
+
+        for (String name : documentPackage.listParts()) {
+            int index = name.lastIndexOf("_rels/");
+            if (name.startsWith("word/") && index >= 0 && name.endsWith(".rels")) {
+                String part = name.substring(0, index) + name.substring(index + "_rels/".length(), name.length() - ".rels".length());
+                if (documentPackage.hasPart(part)) {
+                    parts.add(part);
+                }
+            }
+        }
+
+        parts.sort(Comparator.comparing((String part) -> !DocumentPackage.DOCUMENT_PART.equals(part))
+                .thenComparing(Comparator.naturalOrder()));
+        return parts;
+    }
+
+    static String getRelationsPart(String part) {
+        int index = part.lastIndexOf('/');
+        return part.substring(0, index + 1) + "_rels/" + part.substring(index + 1) + ".rels";
+    }
+
+    static String qualify(String part, String relationId) {
+        return DocumentPackage.DOCUMENT_PART.equals(part) ? relationId : part + "#" + relationId;
+    }
+
+    static PackageScan scan(DocumentPackage documentPackage, RepairOptions options) throws IOException, InterruptedException {
+        return scan(documentPackage, options, true);
+    }
+
+    static PackageScan scan(DocumentPackage documentPackage, RepairOptions options, boolean streaming) throws IOException, InterruptedException {
+        List<String> parts = discoverParts(documentPackage);
+        System.out.println(String.format("%d parts with relationships found", parts.size()));
+
+        List<Callable<PartScan>> tasks = new ArrayList<>();
+        for (String part : parts) {
+            tasks.add(() -> streaming ? scanPart(documentPackage, part, options) : parsePart(documentPackage, part, options));
+        }
+        return new PackageScan(invokeAll(tasks, options.getThreads()));
+    }
+
+    static <T> List<T> invokeAll(List<Callable<T>> tasks, int threads) throws IOException, InterruptedException {
+        if (tasks.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        ExecutorService executorService = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, tasks.size())));
+        try {
+            List<T> results = new ArrayList<>();
+            for (Future<T> future : executorService.invokeAll(tasks)) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException ex) {
+                    if (ex.getCause() instanceof IOException) {
+                        throw (IOException) ex.getCause();
+                    }
+                    throw new IllegalStateException(ex.getCause());
+                }
+            }
+            return results;
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    static PartScan scanPart(DocumentPackage documentPackage, String part, RepairOptions options) throws Exception {
+        String relationsPart = getRelationsPart(part);
+
+        AnalysisCache analysisCache = options.getAnalysisCache();
+        String cacheKey = null;
+        if (analysisCache != null) {
+            cacheKey = analysisCache.key(documentPackage, part, relationsPart, "stream");
+            PartScan cached = analysisCache.load(cacheKey, part, relationsPart);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        DocumentScan scan;
+        if (options.isParallelScan() && DocumentPackage.DOCUMENT_PART.equals(part)) {
+            scan = ParallelDocumentScanner.scan(documentPackage, part, options.getThreads(), options.isVerifyScan());
+        } else {
+            try (InputStream in = documentPackage.openPart(part)) {
+                scan = DocumentScanner.scan(in);
+            }
+        }
+
+        List<String> nullTargetRelationIds = new ArrayList<>();
+        Map<String, String> relations;
+        try (InputStream in = documentPackage.openPart(relationsPart)) {
+            relations = StreamingRewriter.readRelations(in, nullTargetRelationIds);
+        }
+
+        FixImages.debug(String.format("%s: %d embedded relation ids, %d relations", part, scan.getEmbeddedRelationIds().size(), relations.size()));
+        PartScan partScan = new PartScan(part, relationsPart, scan, relations, nullTargetRelationIds);
+        if (analysisCache != null) {
+            analysisCache.store(cacheKey, partScan);
+        }
+        return partScan;
+    }
+
+    static PartScan parsePart(DocumentPackage documentPackage, String part, RepairOptions options) throws Exception {
+        String relationsPart = getRelationsPart(part);
+
+        AnalysisCache analysisCache = options.getAnalysisCache();
+        String cacheKey = null;
+        if (analysisCache != null) {
+            cacheKey = analysisCache.key(documentPackage, part, relationsPart, "dom");
+            PartScan cached = analysisCache.load(cacheKey, part, relationsPart);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        Document relDoc = documentPackage.parsePart(relationsPart);
+        List<String> nullTargetRelationIds = new ArrayList<>();
+        Map<String, String> relations = FixImages.parseRelations(relDoc, nullTargetRelationIds);
+
+        Document doc = documentPackage.parsePart(part);
+        DocumentScan scan = new DocumentScan(FixImages.parseEmbeddedRelationIds(doc), FixImages.parseGraphics(doc));
+
+        FixImages.debug(String.format("%s: %d embedded relation ids, %d relations", part, scan.getEmbeddedRelationIds().size(), relations.size()));
+        PartScan partScan = new PartScan(part, relationsPart, scan, relations, nullTargetRelationIds);
+        if (analysisCache != null) {
+            analysisCache.store(cacheKey, partScan);
+        }
+        return partScan;
+    }
+}
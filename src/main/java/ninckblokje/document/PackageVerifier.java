@@ -0,0 +1,126 @@
+package ninckblokje.document;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+class PackageVerifier {
+
+    static List<String> verify(Path path) throws IOException {
+        List<String> problems = new ArrayList<>();
+
+        // ZipFile reads ZIP64 archives too, the raw copy reader is only for archives it can write itself
+        List<String> names = new ArrayList<>();
+        Set<String> defaults = Collections.emptySet();
+        Set<String> overrides = Collections.emptySet();
+        try (ZipFile zipFile = new ZipFile(path.toFile())) {
+            List<? extends ZipEntry> entries = Collections.list(zipFile.entries());
+            entries.forEach(entry -> names.add(entry.getName()));
+            if (new HashSet<>(names).size() != names.size()) {
+                problems.add("Duplicate entry names");
+            }
+
+            for (ZipEntry entry : entries) {
+                if (!entry.isDirectory()) {
+                    verifyEntry(zipFile, entry, problems);
+                }
+            }
+
+            ZipEntry contentTypes = zipFile.getEntry(ContentTypes.CONTENT_TYPES_PART);
+            if (contentTypes != null) {
+                try (InputStream in = zipFile.getInputStream(contentTypes)) {
+                    defaults = ContentTypes.readDefaults(in);
+                }
+                try (InputStream in = zipFile.getInputStream(contentTypes)) {
+                    overrides = ContentTypes.readOverrides(in);
+                }
+            }
+        } catch (ZipException ex) {
+            problems.add(ex.getMessage());
+            return report(path, 0, problems);
+        } catch (XMLStreamException ex) {
+            problems.add(String.format("%s is not readable: %s", ContentTypes.CONTENT_TYPES_PART, ex.getMessage()));
+        }
+
+        for (String required : Arrays.asList(ContentTypes.CONTENT_TYPES_PART, "_rels/.rels", DocumentPackage.DOCUMENT_PART)) {
+            if (!names.contains(required)) {
+                problems.add(required + " is missing");
+            }
+        }
+
+        for (String name : names) {
+            if (!name.endsWith("/") && !ContentTypes.CONTENT_TYPES_PART.equals(name)
+                    && !overrides.contains("/" + name) && !defaults.contains(ContentTypes.getExtension(name))) {
+                problems.add(String.format("%s has no content type", name));
+            }
+        }
+
+        verifySequential(path, names, problems);
+        return report(path, names.size(), problems);
+    }
+
+    private static void verifyEntry(ZipFile zipFile, ZipEntry entry, List<String> problems) throws IOException {
+        CRC32 crc = new CRC32();
+        try (InputStream in = new CheckedInputStream(zipFile.getInputStream(entry), crc)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        } catch (ZipException ex) {
+            problems.add(String.format("%s is corrupt: %s", entry.getName(), ex.getMessage()));
+            return;
+        }
+
+        if (entry.getName().endsWith(".xml") || entry.getName().endsWith(".rels")) {
+            try (InputStream in = new BufferedInputStream(zipFile.getInputStream(entry), 64 * 1024)) {
+                XMLStreamReader reader = DocumentScanner.getXMLInputFactory().createXMLStreamReader(in);
+                try {
+                    while (reader.hasNext()) {
+                        reader.next();
+                    }
+                } finally {
+                    reader.close();
+                }
+            } catch (XMLStreamException ex) {
+                problems.add(String.format("%s is not well-formed: %s", entry.getName(), ex.getMessage()));
+            }
+        }
+
+        if (crc.getValue() != entry.getCrc()) {
+            problems.add(String.format("%s has CRC %08x, expected %08x", entry.getName(), crc.getValue(), entry.getCrc()));
+        }
+    }
+
+    private static void verifySequential(Path path, List<String> names, List<String> problems) throws IOException {
+        List<String> sequentialNames = new ArrayList<>();
+        try (ZipInputStream in = new ZipInputStream(new BufferedInputStream(Files.newInputStream(path), 64 * 1024))) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                sequentialNames.add(entry.getName());
+                in.transferTo(OutputStream.nullOutputStream());
+            }
+        } catch (ZipException ex) {
+            problems.add(String.format("Sequential read failed after %d entries: %s", sequentialNames.size(), ex.getMessage()));
+            return;
+        }
+
+        if (!sequentialNames.equals(names)) {
+            problems.add("Local headers do not match the central directory");
+        }
+    }
+
+    private static List<String> report(Path path, int entries, List<String> problems) {
+        problems.forEach(problem -> System.err.println("Verification problem: " + problem));
+        System.out.println(String.format("Verified %d entries in %s, %d problems", entries, path, problems.size()));
+        return problems;
+    }
+}
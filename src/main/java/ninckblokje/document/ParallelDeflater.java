@@ -0,0 +1,221 @@
+package ninckblokje.document;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+
+class ParallelDeflater {
+
+    static final String ENTRIES_DEFLATED_IN_PARALLEL = "entriesDeflatedInParallel";
+    static final int BLOCK_SIZE = 128 * 1024;
+    static final int DICTIONARY_SIZE = 32 * 1024;
+
+    private static final ResourcePool<Deflater> DEFLATERS = new ResourcePool<>(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true), Deflater::reset);
+
+    private final OutputStream out;
+    private final ExecutorService executorService;
+    private final int inFlight;
+    private final long threshold;
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+    private final List<byte[]> held = new ArrayList<>();
+    private final byte[] buffer = new byte[64 * 1024];
+    private ResourcePool.Lease<Deflater> serial;
+    private byte[] block;
+    private int blockLength;
+    private byte[] previous;
+    private long total;
+    private boolean parallel;
+    private boolean cancelled;
+
+    public ParallelDeflater(OutputStream out, ExecutorService executorService, int threads, long threshold) {
+        this.out = out;
+        this.executorService = executorService;
+        this.inFlight = Math.max(1, threads) * 2;
+        this.threshold = threshold;
+        if (executorService == null) {
+            serial = DEFLATERS.acquire();
+        } else {
+            block = new byte[BLOCK_SIZE];
+        }
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+        checkNotCancelled();
+        boolean written = false;
+        try {
+            writeBlocks(b, off, len);
+            written = true;
+        } finally {
+            if (!written) {
+                cancel();
+            }
+        }
+    }
+
+    private void writeBlocks(byte[] b, int off, int len) throws IOException {
+        if (serial != null) {
+            deflate(serial.get(), b, off, len);
+            return;
+        }
+
+        while (len > 0) {
+            int length = Math.min(len, BLOCK_SIZE - blockLength);
+            System.arraycopy(b, off, block, blockLength, length);
+            blockLength += length;
+            off += length;
+            len -= length;
+
+            if (blockLength == BLOCK_SIZE) {
+                nextBlock();
+            }
+        }
+    }
+
+    private void nextBlock() throws IOException {
+        total += blockLength;
+        if (parallel) {
+            submit(block, blockLength, false);
+        } else {
+            held.add(block);
+            if (total >= threshold) {
+                // past the threshold the blocks held so far go out first, in order
+                parallel = true;
+                for (byte[] heldBlock : held) {
+                    submit(heldBlock, BLOCK_SIZE, false);
+                }
+                held.clear();
+            }
+        }
+        block = new byte[BLOCK_SIZE];
+        blockLength = 0;
+    }
+
+    public void finish() throws IOException {
+        checkNotCancelled();
+        boolean finished = false;
+        try {
+            finishBlocks();
+            finished = true;
+        } finally {
+            if (!finished) {
+                cancel();
+            }
+        }
+    }
+
+    private void finishBlocks() throws IOException {
+        if (serial == null && parallel) {
+            submit(block, blockLength, true);
+            while (!pending.isEmpty()) {
+                writeNext();
+            }
+            RunMetrics.get().increment(ENTRIES_DEFLATED_IN_PARALLEL);
+            return;
+        }
+
+        if (serial == null) {
+            serial = DEFLATERS.acquire();
+            for (byte[] heldBlock : held) {
+                deflate(serial.get(), heldBlock, 0, BLOCK_SIZE);
+            }
+            held.clear();
+            deflate(serial.get(), block, 0, blockLength);
+        }
+
+        Deflater deflater = serial.get();
+        deflater.finish();
+        while (!deflater.finished()) {
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+        serial.close();
+        serial = null;
+    }
+
+    public void cancel() {
+        // blocks that did not start yet never take a deflater, running ones hand theirs back when done
+        cancelled = true;
+        for (Future<byte[]> future : pending) {
+            future.cancel(true);
+        }
+        pending.clear();
+        held.clear();
+        if (serial != null) {
+            serial.close();
+            serial = null;
+        }
+    }
+
+    boolean isReleased() {
+        return pending.isEmpty() && serial == null;
+    }
+
+    private void checkNotCancelled() throws IOException {
+        if (cancelled) {
+            throw new IOException("Deflater was cancelled after an earlier failure");
+        }
+    }
+
+    private void deflate(Deflater deflater, byte[] b, int off, int len) throws IOException {
+        deflater.setInput(b, off, len);
+        while (!deflater.needsInput()) {
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+    }
+
+    private void submit(byte[] data, int length, boolean last) throws IOException {
+        byte[] dictionary = previous;
+        pending.add(executorService.submit(() -> deflateBlock(data, length, dictionary, last)));
+        previous = data;
+
+        while (pending.size() > inFlight) {
+            writeNext();
+        }
+    }
+
+    private void writeNext() throws IOException {
+        try {
+            out.write(pending.removeFirst().get());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ex);
+        } catch (ExecutionException ex) {
+            throw new IOException(ex.getCause());
+        }
+    }
+
+    static byte[] deflateBlock(byte[] data, int length, byte[] dictionary, boolean last) {
+        try (ResourcePool.Lease<Deflater> lease = DEFLATERS.acquire()) {
+            Deflater deflater = lease.get();
+            if (dictionary != null) {
+                // a block is always preceded by a full block, prime the window with its tail
+                deflater.setDictionary(dictionary, BLOCK_SIZE - DICTIONARY_SIZE, DICTIONARY_SIZE);
+            }
+            deflater.setInput(data, 0, length);
+
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 2 + 64);
+            byte[] buffer = new byte[64 * 1024];
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    compressed.write(buffer, 0, deflater.deflate(buffer));
+                }
+            } else {
+                // a sync flush ends the block on a byte boundary without a final block marker
+                int count;
+                do {
+                    count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    compressed.write(buffer, 0, count);
+                } while (count == buffer.length);
+            }
+            return compressed.toByteArray();
+        }
+    }
+}
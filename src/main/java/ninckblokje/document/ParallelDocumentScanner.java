@@ -0,0 +1,245 @@
+package ninckblokje.document;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.Callable;
+
+class ParallelDocumentScanner {
+
+    static final String WORDPROCESSINGML_NS = "http://schemas.openxmlformats.org/wordprocessingml/2006/main";
+    static final int MIN_CHUNK_SIZE = 1024 * 1024;
+    static final int LOOKAHEAD = 64 * 1024;
+
+    static DocumentScan scan(DocumentPackage documentPackage, String part, int threads, boolean verify) throws IOException, InterruptedException, XMLStreamException {
+        Path file = documentPackage.getPartFile(part);
+        Path tempFile = null;
+        if (file == null) {
+            tempFile = documentPackage.newTempFile(part);
+            try (InputStream in = documentPackage.openPart(part)) {
+                Files.copy(in, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            file = tempFile;
+        }
+
+        try {
+            DocumentScan scan = scan(file, threads);
+            if (verify) {
+                verify(scan, DocumentScanner.scan(file));
+            }
+            return scan;
+        } finally {
+            if (tempFile != null) {
+                Files.deleteIfExists(tempFile);
+            }
+        }
+    }
+
+    static DocumentScan scan(Path file, int threads) throws IOException, InterruptedException, XMLStreamException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                return DocumentScanner.scan(file);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        RunMetrics.get().add(RunMetrics.BYTES_READ, buffer.limit());
+
+        Prefixes prefixes = Prefixes.read(buffer);
+        if (prefixes == null) {
+            FixImages.debug(file + " uses default namespaces, scanning sequentially");
+            return DocumentScanner.scan(file);
+        }
+
+        List<Integer> boundaries = split(buffer, prefixes, Math.max(1, Math.min(threads * 4, buffer.limit() / MIN_CHUNK_SIZE)));
+        List<Callable<ChunkScan>> tasks = new ArrayList<>();
+        for (int i = 0; i < boundaries.size() - 1; i++) {
+            ByteBuffer chunk = buffer.slice(boundaries.get(i), boundaries.get(i + 1) - boundaries.get(i));
+            boolean containsRoot = i == 0;
+            tasks.add(() -> new ChunkScanner(chunk, prefixes, containsRoot).scan());
+        }
+        FixImages.debug(String.format("Scanning %s in %d chunks", file, tasks.size()));
+
+        List<ChunkScan> chunkScans = PackageScanner.invokeAll(tasks, threads);
+        for (ChunkScan chunkScan : chunkScans) {
+            if (!chunkScan.aligned) {
+                // a boundary fell inside a comment or graphic, a value needs the real parser or a prefix is bound below the root
+                FixImages.debug(file + " could not be split on element boundaries, scanning sequentially");
+                return DocumentScanner.scan(file);
+            }
+        }
+
+        List<String> embeddedRelationIds = new ArrayList<>();
+        List<Graphic> graphics = new ArrayList<>();
+        int graphicCount = 0;
+        long nodesScanned = 0;
+        for (ChunkScan chunkScan : chunkScans) {
+            embeddedRelationIds.addAll(chunkScan.embeddedRelationIds);
+            for (Graphic graphic : chunkScan.graphics) {
+                graphics.add(new Graphic(graphicCount + graphic.getIndex(), graphic.getRelationId(), graphic.getFilename(), graphic.getExtentCx(), graphic.getExtentCy()));
+            }
+            graphicCount += chunkScan.graphicCount;
+            nodesScanned += chunkScan.nodesScanned;
+        }
+
+        RunMetrics.get().add(RunMetrics.NODES_SCANNED, nodesScanned);
+
+        System.out.println(String.format("%d blip nodes found", embeddedRelationIds.size()));
+        System.out.println(String.format("%d graphics found", graphicCount));
+
+        return new DocumentScan(embeddedRelationIds, graphics);
+    }
+
+    static List<Integer> split(ByteBuffer buffer, Prefixes prefixes, int chunks) {
+        List<Integer> boundaries = new ArrayList<>();
+        boundaries.add(0);
+
+        int limit = buffer.limit();
+        int bodyStart = indexOf(buffer, prefixes.bodyOpen, 0, limit);
+        if (bodyStart >= 0 && chunks > 1) {
+            int chunkSize = (limit - bodyStart) / chunks;
+            for (int k = 1; k < chunks; k++) {
+                int from = Math.max(bodyStart + k * chunkSize, boundaries.get(boundaries.size() - 1));
+                int end = nextBoundary(buffer, prefixes, from, limit);
+                if (end < 0) {
+                    break;
+                }
+                if (end > boundaries.get(boundaries.size() - 1)) {
+                    boundaries.add(end);
+                }
+            }
+        }
+
+        boundaries.add(limit);
+        return boundaries;
+    }
+
+    static int nextBoundary(ByteBuffer buffer, Prefixes prefixes, int from, int limit) {
+        for (int i = indexOf(buffer, '<', from, limit); i >= 0; i = indexOf(buffer, '<', i + 1, limit)) {
+            int end = startsWith(buffer, prefixes.paragraphClose, i) ? i + prefixes.paragraphClose.length
+                    : startsWith(buffer, prefixes.tableClose, i) ? i + prefixes.tableClose.length : -1;
+            if (end < 0) {
+                continue;
+            }
+
+            // a graphic close ahead of any graphic open means this paragraph is inside a text box, skip past the graphic
+            int graphicClose = nextGraphicClose(buffer, prefixes, end, Math.min(limit, end + LOOKAHEAD));
+            if (graphicClose < 0) {
+                return end;
+            }
+            i = graphicClose;
+        }
+        return -1;
+    }
+
+    private static int nextGraphicClose(ByteBuffer buffer, Prefixes prefixes, int from, int to) {
+        for (int i = indexOf(buffer, '<', from, to); i >= 0; i = indexOf(buffer, '<', i + 1, to)) {
+            if (startsWith(buffer, prefixes.graphicClose, i) && isNameEnd(buffer, i + prefixes.graphicClose.length)) {
+                return i;
+            } else if (startsWith(buffer, prefixes.graphicOpen, i) && isNameEnd(buffer, i + prefixes.graphicOpen.length)
+                    && !isSelfClosing(buffer, i + prefixes.graphicOpen.length, to)) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    static void verify(DocumentScan parallel, DocumentScan sequential) {
+        if (!parallel.getEmbeddedRelationIds().equals(sequential.getEmbeddedRelationIds())) {
+            throw new IllegalStateException(String.format("Parallel scan found %d embedded relation ids, sequential scan %d",
+                    parallel.getEmbeddedRelationIds().size(), sequential.getEmbeddedRelationIds().size()));
+        }
+        if (parallel.getGraphics().size() != sequential.getGraphics().size()) {
+            throw new IllegalStateException(String.format("Parallel scan found %d graphics, sequential scan %d",
+                    parallel.getGraphics().size(), sequential.getGraphics().size()));
+        }
+
+        for (int i = 0; i < parallel.getGraphics().size(); i++) {
+            Graphic graphic = parallel.getGraphics().get(i);
+            Graphic expected = sequential.getGraphics().get(i);
+            if (graphic.getIndex() != expected.getIndex()
+                    || !Objects.equals(graphic.getRelationId(), expected.getRelationId())
+                    || !Objects.equals(graphic.getFilename(), expected.getFilename())
+                    || graphic.getExtentCx() != expected.getExtentCx()
+                    || graphic.getExtentCy() != expected.getExtentCy()) {
+                throw new IllegalStateException(String.format("Parallel scan differs at graphic %d: %d - %s - %s, sequential scan %d - %s - %s",
+                        i, graphic.getIndex(), graphic.getRelationId(), graphic.getFilename(), expected.getIndex(), expected.getRelationId(), expected.getFilename()));
+            }
+        }
+
+        System.out.println("Parallel scan matches the sequential scan");
+    }
+
+    static int indexOf(ByteBuffer buffer, int b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static boolean startsWith(ByteBuffer buffer, byte[] prefix, int from) {
+        if (from + prefix.length > buffer.limit()) {
+            return false;
+        }
+
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(from + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static int indexOf(ByteBuffer buffer, byte[] pattern, int from, int to) {
+        int last = to - pattern.length;
+        for (int i = from; i <= last; i++) {
+            if (buffer.get(i) != pattern[0]) {
+                continue;
+            }
+
+            int j = 1;
+            while (j < pattern.length && buffer.get(i + j) == pattern[j]) {
+                j++;
+            }
+            if (j == pattern.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static boolean isNameEnd(ByteBuffer buffer, int index) {
+        return index < buffer.limit() && isNameEnd(buffer.get(index));
+    }
+
+    static boolean isNameEnd(byte b) {
+        return b == '>' || b == '/' || b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    private static boolean isSelfClosing(ByteBuffer buffer, int from, int to) {
+        byte quote = 0;
+        for (int i = from; i < to; i++) {
+            byte b = buffer.get(i);
+            if (quote != 0) {
+                if (b == quote) {
+                    quote = 0;
+                }
+            } else if (b == '"' || b == '\'') {
+                quote = b;
+            } else if (b == '>') {
+                return buffer.get(i - 1) == '/';
+            }
+        }
+        return false;
+    }
+}
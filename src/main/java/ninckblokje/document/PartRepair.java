@@ -0,0 +1,32 @@
+package ninckblokje.document;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+
+import java.util.*;
+
+class PartRepair {
+
+    private final PartScan partScan;
+    private final Map<String, Deque<RId>> replacements = new HashMap<>();
+    private final List<ImmutablePair<RId, String>> newRelationships = new ArrayList<>();
+
+    public PartRepair(PartScan partScan) {
+        this.partScan = partScan;
+    }
+
+    public String getPart() {
+        return partScan.getPart();
+    }
+
+    public String getRelationsPart() {
+        return partScan.getRelationsPart();
+    }
+
+    public Map<String, Deque<RId>> getReplacements() {
+        return replacements;
+    }
+
+    public List<ImmutablePair<RId, String>> getNewRelationships() {
+        return newRelationships;
+    }
+}
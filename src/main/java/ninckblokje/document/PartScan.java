@@ -0,0 +1,52 @@
+package ninckblokje.document;
+
+import java.util.*;
+
+class PartScan {
+
+    private final String part;
+    private final String relationsPart;
+    private final DocumentScan scan;
+    private final Map<String, String> relations;
+    private final List<String> nullTargetRelationIds;
+
+    public PartScan(String part, String relationsPart, DocumentScan scan, Map<String, String> relations, List<String> nullTargetRelationIds) {
+        this.part = part;
+        this.relationsPart = relationsPart;
+        this.scan = scan;
+        this.relations = relations;
+        this.nullTargetRelationIds = nullTargetRelationIds;
+    }
+
+    public String getPart() {
+        return part;
+    }
+
+    public String getRelationsPart() {
+        return relationsPart;
+    }
+
+    public DocumentScan getScan() {
+        return scan;
+    }
+
+    public Map<String, String> getRelations() {
+        return relations;
+    }
+
+    public List<String> getNullTargetRelationIds() {
+        return nullTargetRelationIds;
+    }
+
+    public Map<String, Integer> getMissingImageCounts(String relationId) {
+        Map<String, Integer> missingImageCounts = new HashMap<>();
+        if (!DocumentPackage.DOCUMENT_PART.equals(part) && relations.containsKey(relationId)) {
+            return missingImageCounts;
+        }
+
+        scan.getGraphics().stream()
+                .filter(graphic -> relationId.equals(graphic.getRelationId()))
+                .forEach(graphic -> missingImageCounts.merge(graphic.getFilename(), 1, Integer::sum));
+        return missingImageCounts;
+    }
+}
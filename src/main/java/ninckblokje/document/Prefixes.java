@@ -0,0 +1,50 @@
+package ninckblokje.document;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+class Prefixes {
+
+    final String drawing;
+    final String picture;
+    final String relationships;
+    final String wordprocessingDrawing;
+    final byte[] bodyOpen;
+    final byte[] paragraphClose;
+    final byte[] tableClose;
+    final byte[] graphicOpen;
+    final byte[] graphicClose;
+
+    private Prefixes(Map<String, String> prefixes) {
+        String main = prefixes.getOrDefault(ParallelDocumentScanner.WORDPROCESSINGML_NS, "w");
+        drawing = prefixes.getOrDefault(DocumentScanner.DRAWINGML_NS, "a");
+        picture = prefixes.getOrDefault(DocumentScanner.PICTURE_NS, "pic");
+        relationships = prefixes.getOrDefault(DocumentScanner.RELATIONSHIPS_NS, "r");
+        wordprocessingDrawing = prefixes.getOrDefault(DocumentScanner.WORDPROCESSING_DRAWING_NS, "wp");
+
+        bodyOpen = ("<" + main + ":body").getBytes(StandardCharsets.UTF_8);
+        paragraphClose = ("</" + main + ":p>").getBytes(StandardCharsets.UTF_8);
+        tableClose = ("</" + main + ":tbl>").getBytes(StandardCharsets.UTF_8);
+        graphicOpen = ("<" + drawing + ":graphic").getBytes(StandardCharsets.UTF_8);
+        graphicClose = ("</" + drawing + ":graphic").getBytes(StandardCharsets.UTF_8);
+    }
+
+    static Prefixes read(ByteBuffer buffer) {
+        ChunkScanner scanner = new ChunkScanner(buffer, null);
+        Map<String, String> attributes = scanner.readRootAttributes();
+        if (attributes == null) {
+            return null;
+        }
+
+        Map<String, String> prefixes = new HashMap<>();
+        for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+            if ("xmlns".equals(attribute.getKey())) {
+                return null;
+            } else if (attribute.getKey().startsWith("xmlns:")) {
+                prefixes.putIfAbsent(attribute.getValue(), attribute.getKey().substring("xmlns:".length()));
+            }
+        }
+        return new Prefixes(prefixes);
+    }
+}
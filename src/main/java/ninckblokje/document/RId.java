@@ -0,0 +1,38 @@
+package ninckblokje.document;
+
+class RId {
+
+    private final String rId;
+    private final int idValue;
+
+    public RId(String rId) {
+        this.rId = rId;
+        this.idValue = FixImages.parseRIdValue(this.rId);
+    }
+
+    public RId(int idValue) {
+        this.rId = String.format("rId%d", idValue);
+        this.idValue = idValue;
+    }
+
+    public String getrId() {
+        return rId;
+    }
+
+    public int getIdValue() {
+        return idValue;
+    }
+
+    public boolean isLargerThen(RId otherRId) {
+        return this.idValue > otherRId.getIdValue();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %d", rId, idValue);
+    }
+
+    public static RId next(RId rId) {
+        return new RId(rId.getIdValue() + 1);
+    }
+}
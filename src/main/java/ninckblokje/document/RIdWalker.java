@@ -0,0 +1,35 @@
+package ninckblokje.document;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+class RIdWalker {
+
+    private final IdAllocator allocator;
+    private final Deque<Integer> reserved = new ArrayDeque<>();
+    private RId rId;
+
+    public RIdWalker(RId rId) {
+        this.allocator = IdAllocator.startingAfter(rId.getIdValue());
+        this.rId = rId;
+    }
+
+    public RIdWalker(IdAllocator allocator) {
+        this.allocator = allocator;
+    }
+
+    public RId current() {
+        return rId;
+    }
+
+    public void reserve(int count) {
+        for (int id : allocator.reserve(count)) {
+            reserved.add(id);
+        }
+    }
+
+    public RId next() {
+        rId = new RId(reserved.isEmpty() ? allocator.allocate() : reserved.poll());
+        return rId;
+    }
+}
@@ -0,0 +1,344 @@
+package ninckblokje.document;
+
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.CRC32;
+import java.util.zip.ZipException;
+
+class RawZipWriter implements Closeable {
+
+    static final String ENTRIES_RAW_COPIED = "entriesRawCopied";
+    static final String ENTRIES_DEFLATED = "entriesDeflated";
+
+    static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+    static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int FLAG_DATA_DESCRIPTOR = 0x08;
+    private static final int FLAG_UTF8 = 0x800;
+    private static final int METHOD_DEFLATED = 8;
+    private static final int VERSION_DEFLATED = 20;
+
+    private final OutputStream out;
+    private final ExecutorService deflateExecutor;
+    private final int deflateThreads;
+    private final long deflateThreshold;
+    private final List<byte[]> centralHeaders = new ArrayList<>();
+    private long offset;
+    private boolean entryOpen;
+
+    public RawZipWriter(OutputStream out) {
+        this(out, null, 1, Long.MAX_VALUE);
+    }
+
+    public RawZipWriter(OutputStream out, ExecutorService deflateExecutor, int deflateThreads, long deflateThreshold) {
+        this.out = out;
+        this.deflateExecutor = deflateExecutor;
+        this.deflateThreads = deflateThreads;
+        this.deflateThreshold = deflateThreshold;
+    }
+
+    public void copyEntry(FileChannel source, CentralRecord record) throws IOException {
+        checkNoEntryOpen();
+
+        ByteBuffer localHeader = read(source, record.getLocalHeaderOffset(), LOCAL_HEADER_SIZE);
+        if (localHeader.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            throw new ZipException(String.format("No local header for %s at offset %d", record.getName(), record.getLocalHeaderOffset()));
+        }
+
+        long dataStart = record.getLocalHeaderOffset() + LOCAL_HEADER_SIZE + getUnsignedShort(localHeader, 26) + getUnsignedShort(localHeader, 28);
+        long length = dataStart - record.getLocalHeaderOffset() + record.getCompressedSize();
+        if ((record.getFlags() & FLAG_DATA_DESCRIPTOR) != 0) {
+            ByteBuffer signature = read(source, dataStart + record.getCompressedSize(), 4);
+            length += signature.getInt(0) == DATA_DESCRIPTOR_SIGNATURE ? 16 : 12;
+        }
+
+        byte[] centralHeader = record.getCentralHeader().clone();
+        ByteBuffer.wrap(centralHeader).order(ByteOrder.LITTLE_ENDIAN).putInt(42, toUnsignedInt(offset, "offset"));
+        centralHeaders.add(centralHeader);
+
+        byte[] buffer = new byte[(int) Math.min(64 * 1024, Math.max(length, 1))];
+        long position = record.getLocalHeaderOffset();
+        long end = position + length;
+        while (position < end) {
+            ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, (int) Math.min(buffer.length, end - position));
+            int read = source.read(chunk, position);
+            if (read < 0) {
+                throw new ZipException(String.format("Entry %s is truncated", record.getName()));
+            }
+            out.write(buffer, 0, read);
+            position += read;
+        }
+        offset += length;
+
+        RunMetrics.get().increment(ENTRIES_RAW_COPIED);
+    }
+
+    public OutputStream openEntry(String name) throws IOException {
+        checkNoEntryOpen();
+        entryOpen = true;
+
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        int dosTime = toDosTime(LocalDateTime.now());
+        long localHeaderOffset = offset;
+
+        ByteBuffer localHeader = ByteBuffer.allocate(LOCAL_HEADER_SIZE + nameBytes.length).order(ByteOrder.LITTLE_ENDIAN);
+        localHeader.putInt(LOCAL_HEADER_SIGNATURE)
+                .putShort((short) VERSION_DEFLATED)
+                .putShort((short) (FLAG_DATA_DESCRIPTOR | FLAG_UTF8))
+                .putShort((short) METHOD_DEFLATED)
+                .putInt(dosTime)
+                .putInt(0)
+                .putInt(0)
+                .putInt(0)
+                .putShort((short) nameBytes.length)
+                .putShort((short) 0)
+                .put(nameBytes);
+        write(localHeader.array());
+
+        return new EntryOutputStream(new CountingOutputStream(out), nameBytes, dosTime, localHeaderOffset);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            checkNoEntryOpen();
+
+            if (centralHeaders.size() > 0xffff) {
+                throw new ZipException(String.format("%d entries need ZIP64, which is not supported", centralHeaders.size()));
+            }
+
+            long centralDirectoryOffset = offset;
+            for (byte[] centralHeader : centralHeaders) {
+                write(centralHeader);
+            }
+
+            ByteBuffer end = ByteBuffer.allocate(END_OF_CENTRAL_DIRECTORY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            end.putInt(END_OF_CENTRAL_DIRECTORY_SIGNATURE)
+                    .putShort((short) 0)
+                    .putShort((short) 0)
+                    .putShort((short) centralHeaders.size())
+                    .putShort((short) centralHeaders.size())
+                    .putInt(toUnsignedInt(offset - centralDirectoryOffset, "central directory size"))
+                    .putInt(toUnsignedInt(centralDirectoryOffset, "central directory offset"))
+                    .putShort((short) 0);
+            write(end.array());
+        } finally {
+            out.close();
+        }
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        out.write(bytes);
+        offset += bytes.length;
+    }
+
+    private void checkNoEntryOpen() {
+        if (entryOpen) {
+            throw new IllegalStateException("Previous entry is still open");
+        }
+    }
+
+    static List<CentralRecord> readCentralDirectory(FileChannel source) throws IOException {
+        long size = source.size();
+        int tailLength = (int) Math.min(size, END_OF_CENTRAL_DIRECTORY_SIZE + 0xffff);
+        ByteBuffer tail = read(source, size - tailLength, tailLength);
+
+        int endPosition = -1;
+        for (int i = tailLength - END_OF_CENTRAL_DIRECTORY_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+                endPosition = i;
+                break;
+            }
+        }
+        if (endPosition < 0) {
+            throw new ZipException("End of central directory not found");
+        }
+
+        int entries = getUnsignedShort(tail, endPosition + 10);
+        long centralDirectorySize = Integer.toUnsignedLong(tail.getInt(endPosition + 12));
+        long centralDirectoryOffset = Integer.toUnsignedLong(tail.getInt(endPosition + 16));
+        if (entries == 0xffff || centralDirectorySize == 0xffffffffL || centralDirectoryOffset == 0xffffffffL) {
+            throw new ZipException("ZIP64 archives are not supported");
+        }
+
+        ByteBuffer centralDirectory = read(source, centralDirectoryOffset, (int) centralDirectorySize);
+        List<CentralRecord> records = new ArrayList<>(entries);
+        int position = 0;
+        for (int i = 0; i < entries; i++) {
+            if (centralDirectory.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+                throw new ZipException(String.format("Central directory entry %d is corrupt", i));
+            }
+
+            int length = CENTRAL_HEADER_SIZE + getUnsignedShort(centralDirectory, position + 28)
+                    + getUnsignedShort(centralDirectory, position + 30) + getUnsignedShort(centralDirectory, position + 32);
+            byte[] centralHeader = new byte[length];
+            centralDirectory.get(position, centralHeader);
+            CentralRecord record = new CentralRecord(centralHeader);
+            if (record.getCompressedSize() == 0xffffffffL || record.getSize() == 0xffffffffL || record.getLocalHeaderOffset() == 0xffffffffL) {
+                throw new ZipException(String.format("Entry %s needs ZIP64, which is not supported", record.getName()));
+            }
+            records.add(record);
+            position += length;
+        }
+        return records;
+    }
+
+    private static ByteBuffer read(FileChannel source, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (source.read(buffer, position + buffer.position()) < 0) {
+                throw new ZipException(String.format("Unexpected end of archive at offset %d", position + buffer.position()));
+            }
+        }
+        return buffer.flip();
+    }
+
+    static int getUnsignedShort(ByteBuffer buffer, int index) {
+        return Short.toUnsignedInt(buffer.getShort(index));
+    }
+
+    private static int toUnsignedInt(long value, String field) throws ZipException {
+        if (value > 0xfffffffeL) {
+            throw new ZipException(String.format("The %s needs ZIP64, which is not supported", field));
+        }
+        return (int) value;
+    }
+
+    static int toDosTime(LocalDateTime time) {
+        if (time.getYear() < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return (time.getYear() - 1980) << 25
+                | time.getMonthValue() << 21
+                | time.getDayOfMonth() << 16
+                | time.getHour() << 11
+                | time.getMinute() << 5
+                | time.getSecond() >> 1;
+    }
+
+    static List<CentralRecord> readCentralDirectory(Path path) throws IOException {
+        try (FileChannel source = FileChannel.open(path, StandardOpenOption.READ)) {
+            return readCentralDirectory(source);
+        }
+    }
+
+    private class EntryOutputStream extends FilterOutputStream {
+
+        private final CountingOutputStream compressed;
+        private final byte[] nameBytes;
+        private final int dosTime;
+        private final long localHeaderOffset;
+        private final ParallelDeflater deflater;
+        private final CRC32 crc = new CRC32();
+        private long uncompressedSize;
+        private boolean closed;
+
+        EntryOutputStream(CountingOutputStream compressed, byte[] nameBytes, int dosTime, long localHeaderOffset) {
+            super(compressed);
+            this.compressed = compressed;
+            this.nameBytes = nameBytes;
+            this.dosTime = dosTime;
+            this.localHeaderOffset = localHeaderOffset;
+            this.deflater = new ParallelDeflater(compressed, deflateExecutor, deflateThreads, deflateThreshold);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            crc.update(b, off, len);
+            uncompressedSize += len;
+            deflater.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+
+            deflater.finish();
+            offset += compressed.getCount();
+
+            ByteBuffer descriptor = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+            descriptor.putInt(DATA_DESCRIPTOR_SIGNATURE)
+                    .putInt((int) crc.getValue())
+                    .putInt(toUnsignedInt(compressed.getCount(), "compressed size"))
+                    .putInt(toUnsignedInt(uncompressedSize, "uncompressed size"));
+            RawZipWriter.this.write(descriptor.array());
+
+            ByteBuffer centralHeader = ByteBuffer.allocate(CENTRAL_HEADER_SIZE + nameBytes.length).order(ByteOrder.LITTLE_ENDIAN);
+            centralHeader.putInt(CENTRAL_HEADER_SIGNATURE)
+                    .putShort((short) VERSION_DEFLATED)
+                    .putShort((short) VERSION_DEFLATED)
+                    .putShort((short) (FLAG_DATA_DESCRIPTOR | FLAG_UTF8))
+                    .putShort((short) METHOD_DEFLATED)
+                    .putInt(dosTime)
+                    .putInt((int) crc.getValue())
+                    .putInt(toUnsignedInt(compressed.getCount(), "compressed size"))
+                    .putInt(toUnsignedInt(uncompressedSize, "uncompressed size"))
+                    .putShort((short) nameBytes.length)
+                    .putShort((short) 0)
+                    .putShort((short) 0)
+                    .putShort((short) 0)
+                    .putShort((short) 0)
+                    .putInt(0)
+                    .putInt(toUnsignedInt(localHeaderOffset, "offset"))
+                    .put(nameBytes);
+            centralHeaders.add(centralHeader.array());
+
+            entryOpen = false;
+            RunMetrics.get().increment(ENTRIES_DEFLATED);
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        public long getCount() {
+            return count;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package ninckblokje.document;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.BiConsumer;
+
+class RepairJournal implements Closeable {
+
+    static final String RUN = "RUN";
+    static final String PART = "PART";
+    static final String PLACE = "PLACE";
+    static final String PLANNED = "PLANNED";
+    static final String COPIED = "COPIED";
+    static final String COMMITTED = "COMMITTED";
+    static final String MOVED = "MOVED";
+
+    private final Path path;
+    private final Map<String, Map<String, Placement>> placements = new LinkedHashMap<>();
+    private final Set<String> copied = new HashSet<>();
+    private final Set<String> moved = new HashSet<>();
+    private FileChannel channel;
+    private boolean resuming;
+    private boolean committed;
+    private int imagesAdded;
+    private String currentPart;
+
+    private RepairJournal(Path path) {
+        this.path = path;
+    }
+
+    static RepairJournal open(Path path, Path packagePath, Path target) throws IOException {
+        if (path == null) {
+            return null;
+        }
+
+        String run = String.join("\t", RUN, packagePath.toAbsolutePath().toString(), target == null ? "" : target.toAbsolutePath().toString());
+        RepairJournal journal = new RepairJournal(path);
+        if (Files.exists(path)) {
+            journal.read(run);
+        }
+
+        if (journal.resuming) {
+            System.out.println(String.format("Resuming from journal %s: %d placements, %d copies done%s",
+                    path, journal.getPlacementCount(), journal.copied.size(), journal.committed ? ", committed" : ""));
+            journal.channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        } else {
+            journal.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            journal.append(run);
+        }
+        return journal;
+    }
+
+    private void read(String run) throws IOException {
+        String content = Files.readString(path, StandardCharsets.UTF_8);
+        List<String> lines = new ArrayList<>(Arrays.asList(content.split("\n", -1)));
+        // the last element is either empty or a record that was cut off by a crash
+        lines.remove(lines.size() - 1);
+        if (lines.isEmpty() || !lines.get(0).equals(run)) {
+            throw new IllegalArgumentException(String.format("Journal %s belongs to another run, remove it to start over", path));
+        }
+
+        boolean planned = false;
+        String part = null;
+        for (String line : lines.subList(1, lines.size())) {
+            String[] fields = line.split("\t", -1);
+            switch (fields[0]) {
+                case PART:
+                    part = fields[1];
+                    break;
+                case PLACE:
+                    placements.computeIfAbsent(part, key -> new LinkedHashMap<>())
+                            .put(fields[1], new Placement(new RId(fields[2]), fields[3], fields[4].isEmpty() ? null : fields[4], Boolean.parseBoolean(fields[5])));
+                    break;
+                case PLANNED:
+                    planned = true;
+                    imagesAdded = Integer.parseInt(fields[1]);
+                    break;
+                case COPIED:
+                    copied.add(fields[1]);
+                    break;
+                case COMMITTED:
+                    committed = true;
+                    break;
+                case MOVED:
+                    moved.add(fields[1]);
+                    break;
+                default:
+                    throw new IOException(String.format("Unknown record %s in journal %s", fields[0], path));
+            }
+        }
+
+        // placements are only binding once the whole plan made it to the journal, a partial plan is redone
+        resuming = planned;
+        if (!planned) {
+            placements.clear();
+            copied.clear();
+            moved.clear();
+        }
+    }
+
+    public boolean isResuming() {
+        return resuming;
+    }
+
+    public boolean isCommitted() {
+        return committed;
+    }
+
+    public int getImagesAdded() {
+        return imagesAdded;
+    }
+
+    public int getPlacementCount() {
+        return placements.values().stream().mapToInt(Map::size).sum();
+    }
+
+    public void part(String part) throws IOException {
+        currentPart = part;
+        if (!resuming) {
+            append(String.join("\t", PART, part));
+        }
+    }
+
+    public void placed(Path source, RId rId, String target, String mediaPart, boolean newRelation) throws IOException {
+        append(String.join("\t", PLACE, source.getFileName().toString(), rId.getrId(), target, mediaPart == null ? "" : mediaPart, String.valueOf(newRelation)));
+    }
+
+    public RId replay(Path source, MediaTransfer mediaTransfer, MediaDigestIndex mediaDigestIndex, BiConsumer<RId, String> newRelationship) {
+        Placement placement = placements.getOrDefault(currentPart, Collections.emptyMap()).get(source.getFileName().toString());
+        if (placement == null) {
+            FixImages.debug(source.getFileName() + " is not part of the journaled run");
+            return null;
+        }
+
+        // a relations part that was saved before the crash already holds the relationship
+        if (placement.isNewRelation() && !mediaDigestIndex.hasRelation(placement.getrId())) {
+            newRelationship.accept(placement.getrId(), placement.getTarget());
+        }
+        if (placement.getMediaPart() != null && !copied.contains(placement.getMediaPart())) {
+            mediaTransfer.plan(source, placement.getMediaPart());
+        }
+        return placement.getrId();
+    }
+
+    public void planned(int imagesAdded) throws IOException {
+        if (!resuming) {
+            this.imagesAdded = imagesAdded;
+            append(String.join("\t", PLANNED, String.valueOf(imagesAdded)));
+            channel.force(false);
+        }
+    }
+
+    public void copied(String mediaPart) throws IOException {
+        append(String.join("\t", COPIED, mediaPart));
+    }
+
+    public void committed() throws IOException {
+        committed = true;
+        append(COMMITTED);
+        channel.force(false);
+    }
+
+    public boolean isMoved(Path source) {
+        return moved.contains(source.getFileName().toString());
+    }
+
+    public void moved(Path source) throws IOException {
+        append(String.join("\t", MOVED, source.getFileName().toString()));
+    }
+
+    public int finish(RepairOptions options) throws IOException {
+        MediaTransfer mediaTransfer = new MediaTransfer(this);
+        for (Map<String, Placement> partPlacements : placements.values()) {
+            for (String name : partPlacements.keySet()) {
+                mediaTransfer.done(options.getMissingImagesFolder().resolve(name));
+            }
+        }
+        mediaTransfer.moveDone(options.getDoneFolder());
+        complete();
+
+        System.out.println(String.format("%d images added", imagesAdded));
+        return imagesAdded;
+    }
+
+    public void complete() throws IOException {
+        close();
+        Files.deleteIfExists(path);
+    }
+
+    private synchronized void append(String record) throws IOException {
+        ByteBuffer buffer = StandardCharsets.UTF_8.encode(record + "\n");
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null && channel.isOpen()) {
+            channel.close();
+        }
+    }
+
+    private static class Placement {
+
+        private final RId rId;
+        private final String target;
+        private final String mediaPart;
+        private final boolean newRelation;
+
+        Placement(RId rId, String target, String mediaPart, boolean newRelation) {
+            this.rId = rId;
+            this.target = target;
+            this.mediaPart = mediaPart;
+            this.newRelation = newRelation;
+        }
+
+        public RId getrId() {
+            return rId;
+        }
+
+        public String getTarget() {
+            return target;
+        }
+
+        public String getMediaPart() {
+            return mediaPart;
+        }
+
+        public boolean isNewRelation() {
+            return newRelation;
+        }
+    }
+}
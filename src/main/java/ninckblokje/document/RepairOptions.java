@@ -0,0 +1,142 @@
+package ninckblokje.document;
+
+import java.nio.file.Path;
+
+class RepairOptions {
+
+    private Path missingImagesFolder = Path.of("data/missingImages");
+    private Path doneFolder = Path.of("data/done");
+    private int transfers = 4;
+    private boolean reuseGaps;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int downscaleDpi;
+    private long decodeMemory = 256L * 1024 * 1024;
+    private boolean parallelScan;
+    private boolean verifyScan;
+    private Path journal;
+    private int deflateThreads = Runtime.getRuntime().availableProcessors();
+    private long deflateThreshold = 4L * 1024 * 1024;
+    private AnalysisCache analysisCache;
+
+    public RepairOptions copy() {
+        RepairOptions copy = new RepairOptions();
+        copy.missingImagesFolder = missingImagesFolder;
+        copy.doneFolder = doneFolder;
+        copy.transfers = transfers;
+        copy.reuseGaps = reuseGaps;
+        copy.threads = threads;
+        copy.downscaleDpi = downscaleDpi;
+        copy.decodeMemory = decodeMemory;
+        copy.parallelScan = parallelScan;
+        copy.verifyScan = verifyScan;
+        copy.journal = journal;
+        copy.deflateThreads = deflateThreads;
+        copy.deflateThreshold = deflateThreshold;
+        copy.analysisCache = analysisCache;
+        return copy;
+    }
+
+    public Path getMissingImagesFolder() {
+        return missingImagesFolder;
+    }
+
+    public void setMissingImagesFolder(Path missingImagesFolder) {
+        this.missingImagesFolder = missingImagesFolder;
+    }
+
+    public Path getDoneFolder() {
+        return doneFolder;
+    }
+
+    public void setDoneFolder(Path doneFolder) {
+        this.doneFolder = doneFolder;
+    }
+
+    public int getTransfers() {
+        return transfers;
+    }
+
+    public void setTransfers(int transfers) {
+        this.transfers = transfers;
+    }
+
+    public boolean isReuseGaps() {
+        return reuseGaps;
+    }
+
+    public void setReuseGaps(boolean reuseGaps) {
+        this.reuseGaps = reuseGaps;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public int getDownscaleDpi() {
+        return downscaleDpi;
+    }
+
+    public void setDownscaleDpi(int downscaleDpi) {
+        this.downscaleDpi = downscaleDpi;
+    }
+
+    public long getDecodeMemory() {
+        return decodeMemory;
+    }
+
+    public void setDecodeMemory(long decodeMemory) {
+        this.decodeMemory = decodeMemory;
+    }
+
+    public boolean isParallelScan() {
+        return parallelScan;
+    }
+
+    public void setParallelScan(boolean parallelScan) {
+        this.parallelScan = parallelScan;
+    }
+
+    public boolean isVerifyScan() {
+        return verifyScan;
+    }
+
+    public void setVerifyScan(boolean verifyScan) {
+        this.verifyScan = verifyScan;
+    }
+
+    public Path getJournal() {
+        return journal;
+    }
+
+    public void setJournal(Path journal) {
+        this.journal = journal;
+    }
+
+    public int getDeflateThreads() {
+        return deflateThreads;
+    }
+
+    public void setDeflateThreads(int deflateThreads) {
+        this.deflateThreads = deflateThreads;
+    }
+
+    public long getDeflateThreshold() {
+        return deflateThreshold;
+    }
+
+    public void setDeflateThreshold(long deflateThreshold) {
+        this.deflateThreshold = deflateThreshold;
+    }
+
+    public AnalysisCache getAnalysisCache() {
+        return analysisCache;
+    }
+
+    public void setAnalysisCache(AnalysisCache analysisCache) {
+        this.analysisCache = analysisCache;
+    }
+}
@@ -0,0 +1,247 @@
+package ninckblokje.document;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+class RepairServer {
+
+    static final String DOCX_CONTENT_TYPE = "application/vnd.openxmlformats-officedocument.wordprocessingml.document";
+    static final String REQUESTS_SERVED = "requestsServed";
+    static final String REQUESTS_REJECTED = "requestsRejected";
+
+    private final RepairOptions options;
+    private final boolean streaming;
+    private final long maxInFlightBytes;
+    private final Semaphore inFlightKb;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private HttpServer server;
+    private ExecutorService executorService;
+
+    public RepairServer(RepairOptions options, boolean streaming, long maxInFlightBytes) {
+        this.options = options;
+        this.streaming = streaming;
+        this.maxInFlightBytes = maxInFlightBytes;
+        this.inFlightKb = new Semaphore(toKb(maxInFlightBytes));
+    }
+
+    public void start(int port) throws IOException {
+        executorService = newRequestExecutor();
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.setExecutor(executorService);
+        server.createContext("/repair", this::handleRepair);
+        server.createContext("/health", exchange -> {
+            try {
+                respond(exchange, 200, "ok");
+            } finally {
+                exchange.close();
+            }
+        });
+        server.start();
+
+        System.out.println(String.format("Repair server listening on port %d, %d bytes in flight", getPort(), maxInFlightBytes));
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(1);
+            executorService.shutdown();
+        }
+        stopped.countDown();
+    }
+
+    public void awaitStop() throws InterruptedException {
+        stopped.await();
+    }
+
+    static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            System.out.println("Virtual threads are not available, using a cached thread pool");
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    void handleRepair(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, "Only POST is supported");
+                return;
+            }
+
+            String contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+            if (contentLength == null) {
+                respond(exchange, 411, "Content-Length is required");
+                return;
+            }
+
+            long length;
+            try {
+                length = Long.parseLong(contentLength);
+            } catch (NumberFormatException ex) {
+                respond(exchange, 400, "Content-Length must be a number");
+                return;
+            }
+            if (length > maxInFlightBytes) {
+                RunMetrics.get().increment(REQUESTS_REJECTED);
+                respond(exchange, 413, String.format("Upload of %d bytes exceeds the limit of %d bytes", length, maxInFlightBytes));
+                return;
+            }
+
+            int permits = toKb(length);
+            if (!inFlightKb.tryAcquire(permits)) {
+                RunMetrics.get().increment(REQUESTS_REJECTED);
+                exchange.getResponseHeaders().add("Retry-After", "1");
+                respond(exchange, 503, "Too many bytes in flight, retry later");
+                return;
+            }
+
+            try {
+                repair(exchange, length);
+                RunMetrics.get().increment(REQUESTS_SERVED);
+            } finally {
+                inFlightKb.release(permits);
+            }
+        } catch (Exception ex) {
+            System.out.println(String.format("Repair request failed: %s", ex));
+            // once the headers are out the status cannot change, closing the exchange cuts the body short
+            if (exchange.getResponseCode() < 0) {
+                respond(exchange, 500, "Repair failed");
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    void repair(HttpExchange exchange, long length) throws Exception {
+        Path workFolder = Files.createTempDirectory("fix-images-request");
+        try {
+            Path missingImagesFolder = Files.createDirectories(workFolder.resolve("missingImages"));
+            Path document;
+            try {
+                document = unpack(exchange.getRequestBody(), workFolder.resolve("input.docx"), missingImagesFolder, length);
+            } catch (IllegalArgumentException ex) {
+                respond(exchange, 400, "Upload is not a valid bundle: " + ex.getMessage());
+                return;
+            }
+            if (document == null) {
+                respond(exchange, 400, "Upload must be a zip bundle containing a .docx file");
+                return;
+            }
+
+            RepairOptions requestOptions = options.copy();
+            requestOptions.setMissingImagesFolder(missingImagesFolder);
+            requestOptions.setDoneFolder(null);
+
+            Path output = workFolder.resolve("output.docx");
+            int imagesAdded;
+            try (DocumentPackage documentPackage = DocumentPackage.open(document)) {
+                imagesAdded = streaming
+                        ? FixImages.repairStreaming(documentPackage, requestOptions, output)
+                        : FixImages.repair(documentPackage, requestOptions, output);
+            }
+
+            exchange.getResponseHeaders().add("Content-Type", DOCX_CONTENT_TYPE);
+            exchange.getResponseHeaders().add("X-Images-Added", String.valueOf(imagesAdded));
+            exchange.sendResponseHeaders(200, Files.size(output));
+            try (OutputStream out = exchange.getResponseBody()) {
+                Files.copy(output, out);
+            }
+        } finally {
+            delete(workFolder);
+        }
+    }
+
+    static Path unpack(InputStream upload, Path document, Path missingImagesFolder, long length) throws IOException {
+        boolean documentFound = false;
+        long remaining = Math.max(length, 1) * 16;
+
+        try (ZipInputStream in = new ZipInputStream(new BufferedInputStream(upload, 64 * 1024))) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                if (entry.isDirectory()) {
+                    continue;
+                }
+
+                String name = getFileName(entry.getName());
+                Path target;
+                if (!documentFound && name.toLowerCase().endsWith(".docx")) {
+                    documentFound = true;
+                    target = document;
+                } else {
+                    target = missingImagesFolder.resolve(name);
+                }
+                remaining -= copy(in, target, remaining);
+            }
+        }
+
+        return documentFound ? document : null;
+    }
+
+    static String getFileName(String entryName) {
+        Path fileName = Path.of(entryName).getFileName();
+        String name = fileName == null ? "" : fileName.toString();
+        if (name.isEmpty() || ".".equals(name) || "..".equals(name)) {
+            throw new IllegalArgumentException(String.format("Entry '%s' has no file name", entryName));
+        }
+        return name;
+    }
+
+    private static long copy(InputStream in, Path target, long limit) throws IOException {
+        long copied = 0;
+        byte[] buffer = new byte[64 * 1024];
+        try (OutputStream out = Files.newOutputStream(target)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                copied += read;
+                if (copied > limit) {
+                    throw new IOException("Unpacked upload is too large");
+                }
+                out.write(buffer, 0, read);
+            }
+        }
+        return copied;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] body = message.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static void delete(Path folder) throws IOException {
+        try (Stream<Path> paths = Files.walk(folder)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    private static int toKb(long bytes) {
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, (bytes + 1023) / 1024));
+    }
+}
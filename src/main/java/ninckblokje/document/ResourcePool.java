@@ -0,0 +1,57 @@
+package ninckblokje.document;
+
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+class ResourcePool<T> {
+
+    private final Queue<T> idle = new ConcurrentLinkedQueue<>();
+    private final Callable<T> factory;
+    private final Consumer<T> reset;
+
+    public ResourcePool(Callable<T> factory, Consumer<T> reset) {
+        this.factory = factory;
+        this.reset = reset;
+    }
+
+    public Lease<T> acquire() {
+        T resource = idle.poll();
+        if (resource == null) {
+            try {
+                resource = factory.call();
+            } catch (Exception ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+        return new Lease<>(this, resource);
+    }
+
+    private void release(T resource) {
+        if (reset != null) {
+            reset.accept(resource);
+        }
+        idle.offer(resource);
+    }
+
+    static class Lease<T> implements AutoCloseable {
+
+        private final ResourcePool<T> pool;
+        private final T resource;
+
+        private Lease(ResourcePool<T> pool, T resource) {
+            this.pool = pool;
+            this.resource = resource;
+        }
+
+        public T get() {
+            return resource;
+        }
+
+        @Override
+        public void close() {
+            pool.release(resource);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package ninckblokje.document;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+class RunMetrics {
+
+    static final String PARSE = "parse";
+    static final String ANALYZE = "analyze";
+    static final String ALLOCATE = "allocate";
+    static final String DOWNSCALE = "downscale";
+    static final String COPY = "copy";
+    static final String SAVE = "save";
+
+    static final String NODES_SCANNED = "nodesScanned";
+    static final String BYTES_READ = "bytesRead";
+    static final String BYTES_WRITTEN = "bytesWritten";
+    static final String XPATH_EVALUATIONS = "xpathEvaluations";
+    static final String IMAGES_INSERTED = "imagesInserted";
+    static final String IMAGES_DOWNSCALED = "imagesDownscaled";
+    static final String BYTES_SAVED = "bytesSaved";
+
+    private static final RunMetrics INSTANCE = new RunMetrics();
+
+    private final Instant startedAt = Instant.now();
+    private final long startedNanos = System.nanoTime();
+    private final Map<String, LongAdder> phaseNanos = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> phaseCounts = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private volatile boolean jfrEnabled;
+    private Recording recording;
+
+    static RunMetrics get() {
+        return INSTANCE;
+    }
+
+    public synchronized void startJfr() {
+        recording = new Recording();
+        recording.setName("fix-images");
+        recording.enable(PhaseEvent.class);
+        recording.start();
+        jfrEnabled = true;
+    }
+
+    public synchronized void stopJfr(Path jfrFile) throws IOException {
+        if (recording == null) {
+            return;
+        }
+
+        jfrEnabled = false;
+        recording.stop();
+        recording.dump(jfrFile);
+        recording.close();
+        recording = null;
+        System.out.println("JFR recording written to " + jfrFile);
+    }
+
+    public Phase phase(String name) {
+        return new Phase(name);
+    }
+
+    public void increment(String counter) {
+        add(counter, 1);
+    }
+
+    public void add(String counter, long value) {
+        counters.computeIfAbsent(counter, key -> new LongAdder()).add(value);
+    }
+
+    public long getCounter(String counter) {
+        LongAdder adder = counters.get(counter);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    public long getPhaseMillis(String phase) {
+        LongAdder adder = phaseNanos.get(phase);
+        return adder == null ? 0 : adder.sum() / 1_000_000;
+    }
+
+    public InputStream countRead(InputStream in) {
+        return new FilterInputStream(in) {
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b != -1) {
+                    increment(BYTES_READ);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int read = super.read(b, off, len);
+                if (read > 0) {
+                    add(BYTES_READ, read);
+                }
+                return read;
+            }
+        };
+    }
+
+    public OutputStream countWritten(OutputStream out) {
+        return new FilterOutputStream(out) {
+
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                increment(BYTES_WRITTEN);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                add(BYTES_WRITTEN, len);
+            }
+        };
+    }
+
+    public void writeReport(Path reportFile) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(reportFile, StandardCharsets.UTF_8)) {
+            writer.write(toJson());
+        }
+        System.out.println("Run report written to " + reportFile);
+    }
+
+    public String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append(String.format("  \"startedAt\": \"%s\",\n", startedAt));
+        json.append(String.format("  \"wallMillis\": %d,\n", (System.nanoTime() - startedNanos) / 1_000_000));
+
+        json.append("  \"phases\": {");
+        String separator = "\n";
+        for (Map.Entry<String, LongAdder> phase : new TreeMap<>(phaseNanos).entrySet()) {
+            json.append(separator).append(String.format("    \"%s\": {\"count\": %d, \"millis\": %d}",
+                    phase.getKey(), phaseCounts.get(phase.getKey()).sum(), phase.getValue().sum() / 1_000_000));
+            separator = ",\n";
+        }
+        json.append("\n  },\n");
+
+        json.append("  \"counters\": {");
+        separator = "\n";
+        for (Map.Entry<String, LongAdder> counter : new TreeMap<>(counters).entrySet()) {
+            json.append(separator).append(String.format("    \"%s\": %d", counter.getKey(), counter.getValue().sum()));
+            separator = ",\n";
+        }
+        json.append("\n  }\n");
+        json.append("}\n");
+        return json.toString();
+    }
+
+    class Phase implements AutoCloseable {
+
+        private final String name;
+        private final long started = System.nanoTime();
+        private final PhaseEvent event;
+
+        private Phase(String name) {
+            this.name = name;
+            if (jfrEnabled) {
+                event = new PhaseEvent();
+                event.phase = name;
+                event.begin();
+            } else {
+                event = null;
+            }
+        }
+
+        @Override
+        public void close() {
+            phaseNanos.computeIfAbsent(name, key -> new LongAdder()).add(System.nanoTime() - started);
+            phaseCounts.computeIfAbsent(name, key -> new LongAdder()).increment();
+            if (event != null) {
+                event.commit();
+            }
+        }
+    }
+
+    @Name("ninckblokje.document.Phase")
+    @Label("Fix Images Phase")
+    @Category("Fix Images")
+    static class PhaseEvent extends Event {
+
+        @Label("Phase")
+        String phase;
+    }
+}
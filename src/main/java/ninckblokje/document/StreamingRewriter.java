@@ -0,0 +1,166 @@
+package ninckblokje.document;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+
+import javax.xml.stream.*;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+class StreamingRewriter {
+
+    static final String PACKAGE_RELATIONSHIPS_NS = "http://schemas.openxmlformats.org/package/2006/relationships";
+    static final String IMAGE_RELATIONSHIP_TYPE = "http://schemas.openxmlformats.org/officeDocument/2006/relationships/image";
+
+    static OutputStream newOutputStream(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        return new BufferedOutputStream(RunMetrics.get().countWritten(Channels.newOutputStream(channel)), 64 * 1024);
+    }
+
+    static int rewriteDocument(InputStream in, OutputStream out, String relationId, Map<String, Deque<RId>> replacements) throws XMLStreamException {
+        XMLStreamReader reader = DocumentScanner.getXMLInputFactory().createXMLStreamReader(in);
+        CompactXmlCopier copier = new CompactXmlCopier(out);
+
+        String pictureName = null;
+        int replaced = 0;
+
+        try {
+            copier.copy(reader);
+            while (reader.hasNext()) {
+                int event = reader.next();
+
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String namespace = reader.getNamespaceURI();
+                    String localName = reader.getLocalName();
+
+                    if (DocumentScanner.PICTURE_NS.equals(namespace) && "pic".equals(localName)) {
+                        pictureName = null;
+                    } else if (DocumentScanner.PICTURE_NS.equals(namespace) && "cNvPr".equals(localName)) {
+                        String name = reader.getAttributeValue(null, "name");
+                        if (pictureName == null && name != null) {
+                            pictureName = name;
+                        }
+                    } else if (DocumentScanner.DRAWINGML_NS.equals(namespace) && "blip".equals(localName) && pictureName != null) {
+                        String embed = reader.getAttributeValue(DocumentScanner.RELATIONSHIPS_NS, "embed");
+                        Deque<RId> rIds = replacements.get(pictureName);
+
+                        if (relationId.equals(embed) && rIds != null && !rIds.isEmpty()) {
+                            copier.copyStartElement(reader, DocumentScanner.RELATIONSHIPS_NS, "embed", rIds.poll().getrId());
+                            replaced++;
+                            continue;
+                        }
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (DocumentScanner.PICTURE_NS.equals(reader.getNamespaceURI()) && "pic".equals(reader.getLocalName())) {
+                        pictureName = null;
+                    }
+                }
+
+                copier.copy(reader);
+            }
+            copier.flush();
+        } finally {
+            reader.close();
+        }
+
+        System.out.println(String.format("%d embedded relation ids rewritten", replaced));
+        return replaced;
+    }
+
+    static void rewriteRelations(InputStream in, OutputStream out, List<ImmutablePair<RId, String>> newRelationships) throws XMLStreamException {
+        XMLStreamReader reader = DocumentScanner.getXMLInputFactory().createXMLStreamReader(in);
+        CompactXmlCopier copier = new CompactXmlCopier(out);
+
+        int depth = 0;
+        try {
+            copier.copy(reader);
+            while (reader.hasNext()) {
+                int event = reader.next();
+
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                } else if (event == XMLStreamConstants.END_ELEMENT && --depth == 0) {
+                    for (ImmutablePair<RId, String> newRelationship : newRelationships) {
+                        addRelationship(copier, reader.getPrefix(), newRelationship.getLeft(), newRelationship.getRight());
+                    }
+                }
+
+                copier.copy(reader);
+            }
+            copier.flush();
+        } finally {
+            reader.close();
+        }
+    }
+
+    static IdAllocator getRIdAllocator(InputStream in, Collection<String> embedIds, String relationId, boolean reuseGaps) throws XMLStreamException {
+        XMLStreamReader reader = DocumentScanner.getXMLInputFactory().createXMLStreamReader(in);
+        IdAllocator allocator = new IdAllocator(reuseGaps);
+
+        int count = 0;
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT
+                        && PACKAGE_RELATIONSHIPS_NS.equals(reader.getNamespaceURI())
+                        && "Relationship".equals(reader.getLocalName())) {
+                    count++;
+                    FixImages.markRIdUsed(allocator, reader.getAttributeValue(null, "Id"));
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        // ids the document refers to without a relationship are not free, the placeholder is one of them
+        FixImages.markRIdUsed(allocator, relationId);
+        for (String embedId : embedIds) {
+            FixImages.markRIdUsed(allocator, embedId);
+        }
+
+        System.out.println("Relation ids over " + count + " relation nodes: " + allocator);
+        return allocator;
+    }
+
+    static Map<String, String> readRelations(InputStream in) throws XMLStreamException {
+        return readRelations(in, new ArrayList<>());
+    }
+
+    static Map<String, String> readRelations(InputStream in, Collection<String> nullTargetRelationIds) throws XMLStreamException {
+        XMLStreamReader reader = DocumentScanner.getXMLInputFactory().createXMLStreamReader(in);
+
+        Map<String, String> relations = new HashMap<>();
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT
+                        && PACKAGE_RELATIONSHIPS_NS.equals(reader.getNamespaceURI())
+                        && "Relationship".equals(reader.getLocalName())) {
+                    String id = reader.getAttributeValue(null, "Id");
+                    String target = reader.getAttributeValue(null, "Target");
+                    if (target.toUpperCase().equals("NULL")) {
+                        nullTargetRelationIds.add(id);
+                    } else {
+                        relations.put(id, target);
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return relations;
+    }
+
+    private static void addRelationship(CompactXmlCopier copier, String prefix, RId rId, String target) throws XMLStreamException {
+        FixImages.debug("Creating new relationship " + rId.getrId() + " " + target);
+
+        copier.writeEmptyElement(prefix, "Relationship",
+                "Id", rId.getrId(),
+                "Type", IMAGE_RELATIONSHIP_TYPE,
+                "Target", target);
+    }
+}
@@ -0,0 +1,176 @@
+package ninckblokje.document;
+
+import org.w3c.dom.Document;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+@SuppressWarnings("try")
+class WatchRepair {
+
+    private final DocumentPackage documentPackage;
+    private final RepairOptions options;
+    private final Path target;
+    private final long debounceMillis;
+    private final Map<String, WatchedPart> parts = new LinkedHashMap<>();
+    private ImageFileWalker imageFileWalker;
+    private MediaDigestIndex mediaDigestIndex;
+    private int batches;
+
+    public WatchRepair(DocumentPackage documentPackage, RepairOptions options, Path target, long debounceMillis) {
+        this.documentPackage = documentPackage;
+        this.options = options;
+        this.target = target;
+        this.debounceMillis = debounceMillis;
+    }
+
+    public void open() throws Exception {
+        try (RunMetrics.Phase phase = RunMetrics.get().phase(RunMetrics.PARSE)) {
+            for (String part : PackageScanner.discoverParts(documentPackage)) {
+                Document relDoc = documentPackage.parsePart(PackageScanner.getRelationsPart(part));
+                if (DocumentPackage.DOCUMENT_PART.equals(part) || !FixImages.hasRelation(relDoc, "rId7")) {
+                    Document doc = documentPackage.parsePart(part);
+                    parts.put(part, new WatchedPart(doc, relDoc, BlipIndex.build(doc, "rId7"),
+                            new RIdWalker(FixImages.getRIdAllocator(relDoc, doc, "rId7", options.isReuseGaps()))));
+                }
+            }
+        }
+
+        try (RunMetrics.Phase phase = RunMetrics.get().phase(RunMetrics.ALLOCATE)) {
+            imageFileWalker = new ImageFileWalker(FixImages.getImageFileAllocator(documentPackage, options.isReuseGaps()));
+            mediaDigestIndex = MediaDigestIndex.build(documentPackage, Collections.emptyMap());
+            for (WatchedPart part : parts.values()) {
+                part.mediaDigestIndex = mediaDigestIndex.forRelations(FixImages.parseRelations(part.relDoc));
+            }
+        }
+
+        System.out.println(String.format("Watching %d parts with %d missing images", parts.size(), getMissingImageCount()));
+    }
+
+    public void run() throws Exception {
+        Path folder = options.getMissingImagesFolder();
+        try (Stream<Path> paths = Files.list(folder)) {
+            applyBatch(paths.collect(Collectors.toCollection(TreeSet::new)));
+        }
+
+        try (WatchService watchService = folder.getFileSystem().newWatchService()) {
+            folder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            System.out.println(String.format("Watching %s for missing images, debounce %d ms", folder, debounceMillis));
+
+            while (!Thread.currentThread().isInterrupted()) {
+                Set<Path> batch = new TreeSet<>();
+                WatchKey key = watchService.take();
+                while (key != null) {
+                    collect(key, folder, batch);
+                    if (!key.reset()) {
+                        throw new IOException(String.format("Folder %s is no longer watched", folder));
+                    }
+                    key = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS);
+                }
+
+                applyBatch(batch);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public int applyBatch(Collection<Path> paths) throws Exception {
+        List<Path> images = paths.stream()
+                .filter(Files::isRegularFile)
+                .collect(Collectors.toList());
+        if (images.isEmpty()) {
+            return 0;
+        }
+
+        RunMetrics metrics = RunMetrics.get();
+        MediaTransfer mediaTransfer = new MediaTransfer();
+        List<String> changedParts = new ArrayList<>();
+        int imagesAdded = 0;
+
+        try (RunMetrics.Phase phase = metrics.phase(RunMetrics.ALLOCATE)) {
+            for (Map.Entry<String, WatchedPart> entry : parts.entrySet()) {
+                WatchedPart part = entry.getValue();
+                int partImagesAdded = 0;
+                for (Path path : images) {
+                    if (part.blipIndex.count(path.getFileName().toString()) > 0) {
+                        partImagesAdded += FixImages.addMissingImage(mediaTransfer, part.blipIndex, part.mediaDigestIndex, part.relDoc, part.rIdWalker, imageFileWalker, path);
+                    }
+                }
+
+                if (partImagesAdded > 0) {
+                    changedParts.add(entry.getKey());
+                }
+                imagesAdded += partImagesAdded;
+            }
+        }
+
+        if (imagesAdded == 0) {
+            FixImages.debug(String.format("None of %d files is missing", images.size()));
+            return 0;
+        }
+
+        try (RunMetrics.Phase phase = metrics.phase(RunMetrics.COPY)) {
+            mediaTransfer.execute(documentPackage, options.getTransfers());
+        }
+
+        try (RunMetrics.Phase phase = metrics.phase(RunMetrics.SAVE)) {
+            for (String part : changedParts) {
+                documentPackage.savePart(PackageScanner.getRelationsPart(part), parts.get(part).relDoc);
+                documentPackage.savePart(part, parts.get(part).doc);
+            }
+            ContentTypes.update(documentPackage, mediaTransfer);
+            documentPackage.commit(target, options);
+        }
+
+        mediaTransfer.moveDone(options.getDoneFolder());
+        metrics.add(RunMetrics.IMAGES_INSERTED, imagesAdded);
+        System.out.println(String.format("Batch %d: %d files, %d images added, %d missing images left",
+                ++batches, images.size(), imagesAdded, getMissingImageCount()));
+        return imagesAdded;
+    }
+
+    public int getMissingImageCount() {
+        int count = 0;
+        for (WatchedPart part : parts.values()) {
+            for (String name : part.blipIndex.names()) {
+                count += part.blipIndex.count(name);
+            }
+        }
+        return count;
+    }
+
+    private static void collect(WatchKey key, Path folder, Set<Path> batch) {
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                try (Stream<Path> paths = Files.list(folder)) {
+                    paths.forEach(batch::add);
+                } catch (IOException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            } else {
+                batch.add(folder.resolve((Path) event.context()));
+            }
+        }
+    }
+
+    private static class WatchedPart {
+
+        private final Document doc;
+        private final Document relDoc;
+        private final BlipIndex blipIndex;
+        private final RIdWalker rIdWalker;
+        private MediaDigestIndex mediaDigestIndex;
+
+        WatchedPart(Document doc, Document relDoc, BlipIndex blipIndex, RIdWalker rIdWalker) {
+            this.doc = doc;
+            this.relDoc = relDoc;
+            this.blipIndex = blipIndex;
+            this.rIdWalker = rIdWalker;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package ninckblokje.document;
+
+import org.w3c.dom.Document;
+
+import javax.xml.transform.TransformerException;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+class ZipPackage implements DocumentPackage {
+
+    private final Path path;
+    private ZipFile zipFile;
+    private final Map<String, Document> savedParts = new LinkedHashMap<>();
+    private final Map<String, Path> addedParts = new LinkedHashMap<>();
+    private final Map<String, Path> replacedParts = new LinkedHashMap<>();
+
+    public ZipPackage(Path path) throws IOException {
+        this.path = path;
+        this.zipFile = new ZipFile(path.toFile());
+    }
+
+    @Override
+    public Path getPath() {
+        return path;
+    }
+
+    public ZipFile getZipFile() {
+        return zipFile;
+    }
+
+    @Override
+    public synchronized boolean hasPart(String name) {
+        ZipEntry entry = zipFile.getEntry(name);
+        return entry != null && !entry.isDirectory() || addedParts.containsKey(name);
+    }
+
+    @Override
+    public InputStream openPart(String name) throws IOException {
+        Path pending = getPendingPart(name);
+        if (pending != null) {
+            return new BufferedInputStream(RunMetrics.get().countRead(Files.newInputStream(pending)), 64 * 1024);
+        }
+
+        ZipEntry entry = zipFile.getEntry(name);
+        if (entry == null) {
+            throw new IOException(String.format("Part %s not found in %s", name, path));
+        }
+        return new BufferedInputStream(RunMetrics.get().countRead(zipFile.getInputStream(entry)), 64 * 1024);
+    }
+
+    @Override
+    public List<String> listParts() {
+        List<String> parts = new ArrayList<>(zipFile.size());
+        Enumeration<? extends ZipEntry> entries = zipFile.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            if (!entry.isDirectory()) {
+                parts.add(entry.getName());
+            }
+        }
+        synchronized (this) {
+            parts.addAll(addedParts.keySet());
+        }
+        return parts;
+    }
+
+    @Override
+    public synchronized void addPart(String name, Path source) throws IOException {
+        if (hasPart(name)) {
+            throw new FileAlreadyExistsException(name);
+        }
+        addedParts.put(name, source);
+    }
+
+    @Override
+    public synchronized void savePart(String name, Document doc) {
+        savedParts.put(name, doc);
+    }
+
+    @Override
+    public synchronized void replacePart(String name, Path source) throws IOException {
+        Path previous = replacedParts.put(name, source);
+        if (previous != null && !previous.equals(source)) {
+            Files.deleteIfExists(previous);
+        }
+    }
+
+    private synchronized Path getPendingPart(String name) {
+        Path pending = replacedParts.get(name);
+        return pending == null ? addedParts.get(name) : pending;
+    }
+
+    @Override
+    public void commit(Path target, RepairOptions options) throws IOException, TransformerException {
+        if (target == null || Files.exists(target) && Files.isSameFile(target, path)) {
+            throw new IllegalArgumentException(String.format("Package %s must be committed to another file", path));
+        }
+
+        System.out.println("Storing package " + target);
+        Path absoluteTarget = target.toAbsolutePath();
+        Path tempFile = DocumentPackage.createTempFile(absoluteTarget.getParent(), absoluteTarget.getFileName().toString());
+        try {
+            try {
+                writeRaw(tempFile, options);
+            } catch (ZipException ex) {
+                System.out.println(String.format("Rewriting every entry, raw copy is not possible: %s", ex.getMessage()));
+                rewrite(tempFile);
+            }
+        } catch (IOException | TransformerException | RuntimeException ex) {
+            Files.deleteIfExists(tempFile);
+            throw ex;
+        }
+
+        DocumentPackage.moveOver(tempFile, absoluteTarget);
+        rebase(absoluteTarget);
+    }
+
+    private void writeRaw(Path file, RepairOptions options) throws IOException, TransformerException {
+        ExecutorService deflateExecutor = options.getDeflateThreads() > 1 ? Executors.newFixedThreadPool(options.getDeflateThreads()) : null;
+        try (FileChannel source = FileChannel.open(Path.of(zipFile.getName()), StandardOpenOption.READ);
+             RawZipWriter out = new RawZipWriter(new BufferedOutputStream(RunMetrics.get().countWritten(Files.newOutputStream(file)), 64 * 1024),
+                     deflateExecutor, options.getDeflateThreads(), options.getDeflateThreshold())) {
+            for (CentralRecord record : RawZipWriter.readCentralDirectory(source)) {
+                if (replacedParts.containsKey(record.getName())) {
+                    try (OutputStream entry = out.openEntry(record.getName())) {
+                        Files.copy(replacedParts.get(record.getName()), entry);
+                    }
+                } else if (savedParts.containsKey(record.getName())) {
+                    try (OutputStream entry = new BufferedOutputStream(out.openEntry(record.getName()), 64 * 1024)) {
+                        FixImages.saveDocument(savedParts.get(record.getName()), entry);
+                    }
+                } else {
+                    out.copyEntry(source, record);
+                }
+            }
+
+            for (Map.Entry<String, Path> addedPart : addedParts.entrySet()) {
+                try (OutputStream entry = out.openEntry(addedPart.getKey())) {
+                    Files.copy(addedPart.getValue(), entry);
+                }
+            }
+        } finally {
+            if (deflateExecutor != null) {
+                deflateExecutor.shutdownNow();
+            }
+        }
+    }
+
+    private void rewrite(Path file) throws IOException, TransformerException {
+        try (ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(RunMetrics.get().countWritten(Files.newOutputStream(file)), 64 * 1024))) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                out.putNextEntry(new ZipEntry(entry.getName()));
+                if (replacedParts.containsKey(entry.getName())) {
+                    Files.copy(replacedParts.get(entry.getName()), out);
+                } else if (savedParts.containsKey(entry.getName())) {
+                    FixImages.saveDocument(savedParts.get(entry.getName()), out);
+                } else {
+                    try (InputStream in = zipFile.getInputStream(entry)) {
+                        in.transferTo(out);
+                    }
+                }
+                out.closeEntry();
+            }
+
+            for (Map.Entry<String, Path> addedPart : addedParts.entrySet()) {
+                out.putNextEntry(new ZipEntry(addedPart.getKey()));
+                Files.copy(addedPart.getValue(), out);
+                out.closeEntry();
+            }
+        }
+    }
+
+    private synchronized void rebase(Path committed) throws IOException {
+        zipFile.close();
+        zipFile = new ZipFile(committed.toFile());
+        addedParts.clear();
+        for (Path replacedPart : replacedParts.values()) {
+            Files.deleteIfExists(replacedPart);
+        }
+        replacedParts.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        zipFile.close();
+        for (Path replacedPart : replacedParts.values()) {
+            Files.deleteIfExists(replacedPart);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package ninckblokje.document;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AnalysisCacheTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void storedScanLoadsBack() throws Exception {
+        AnalysisCache cache = new AnalysisCache(folder.resolve("cache"), 1024 * 1024);
+        Map<String, String> relations = new LinkedHashMap<>();
+        relations.put("rId9", "media/image9.png");
+        relations.put("rId1", "styles.xml");
+        relations.put("rId7", "media/placeholder.png");
+        PartScan partScan = new PartScan(DocumentPackage.DOCUMENT_PART, DocumentPackage.RELATIONS_PART,
+                new DocumentScan(Arrays.asList("rId7", "rId9", "rId7"), Arrays.asList(
+                        new Graphic(1, "rId7", "logo.png", 100, 200),
+                        new Graphic(2, "rId9", null, 300, 400),
+                        new Graphic(3, "rId7", "logo.png", 0, 0))),
+                relations, Collections.singletonList("rId4"));
+
+        cache.store("key", partScan);
+        PartScan loaded = cache.load("key", DocumentPackage.DOCUMENT_PART, DocumentPackage.RELATIONS_PART);
+
+        assertNotNull(loaded);
+        assertEquals(DocumentPackage.DOCUMENT_PART, loaded.getPart());
+        assertEquals(DocumentPackage.RELATIONS_PART, loaded.getRelationsPart());
+        assertEquals(Arrays.asList("rId7", "rId9", "rId7"), loaded.getScan().getEmbeddedRelationIds());
+        assertEquals(3, loaded.getScan().getGraphics().size());
+        Graphic graphic = loaded.getScan().getGraphics().get(1);
+        assertEquals(2, graphic.getIndex());
+        assertEquals("rId9", graphic.getRelationId());
+        assertNull(graphic.getFilename());
+        assertEquals(300, graphic.getExtentCx());
+        assertEquals(400, graphic.getExtentCy());
+        assertEquals(new ArrayList<>(relations.entrySet()), new ArrayList<>(loaded.getRelations().entrySet()));
+        assertEquals(Collections.singletonList("rId4"), loaded.getNullTargetRelationIds());
+    }
+
+    @Test
+    void missingOrBrokenEntryIsAMiss() throws Exception {
+        Path cacheFolder = Files.createDirectories(folder.resolve("cache"));
+        AnalysisCache cache = new AnalysisCache(cacheFolder, 1024 * 1024);
+        Path broken = cacheFolder.resolve("broken.bin");
+        Files.write(broken, new byte[]{1, 2, 3});
+
+        assertNull(cache.load("absent", DocumentPackage.DOCUMENT_PART, DocumentPackage.RELATIONS_PART));
+        assertNull(cache.load("broken", DocumentPackage.DOCUMENT_PART, DocumentPackage.RELATIONS_PART));
+        assertFalse(Files.exists(broken));
+    }
+
+    @Test
+    void leastRecentlyUsedEntriesAreEvicted() throws Exception {
+        Path cacheFolder = folder.resolve("cache");
+        PartScan partScan = partScan(50);
+        new AnalysisCache(cacheFolder, Long.MAX_VALUE).store("probe", partScan);
+        long entrySize = Files.size(cacheFolder.resolve("probe.bin"));
+        Files.delete(cacheFolder.resolve("probe.bin"));
+
+        AnalysisCache cache = new AnalysisCache(cacheFolder, entrySize * 3);
+        cache.store("first", partScan);
+        cache.store("second", partScan);
+        cache.store("third", partScan);
+        Files.setLastModifiedTime(cacheFolder.resolve("first.bin"), FileTime.fromMillis(1000));
+        Files.setLastModifiedTime(cacheFolder.resolve("second.bin"), FileTime.fromMillis(3000));
+        Files.setLastModifiedTime(cacheFolder.resolve("third.bin"), FileTime.fromMillis(2000));
+
+        // replacing an entry keeps the total the same
+        cache.store("second", partScan);
+        assertTrue(Files.exists(cacheFolder.resolve("first.bin")));
+
+        cache.store("fourth", partScan);
+
+        assertFalse(Files.exists(cacheFolder.resolve("first.bin")));
+        assertTrue(Files.exists(cacheFolder.resolve("second.bin")));
+        assertTrue(Files.exists(cacheFolder.resolve("third.bin")));
+        assertTrue(Files.exists(cacheFolder.resolve("fourth.bin")));
+    }
+
+    @Test
+    void keyChangesWithContentAndMode() throws Exception {
+        Path root = folder.resolve("document");
+        Map<String, byte[]> parts = new LinkedHashMap<>();
+        parts.put(DocumentPackage.DOCUMENT_PART, TestDocuments.utf8(TestDocuments.document(TestDocuments.picture(1, "logo.png", "rId7"))));
+        parts.put(DocumentPackage.RELATIONS_PART, TestDocuments.utf8(TestDocuments.relationships()));
+        TestDocuments.writeFolder(root, parts);
+        AnalysisCache cache = new AnalysisCache(folder.resolve("cache"), 1024 * 1024);
+
+        String streaming;
+        String dom;
+        try (DocumentPackage documentPackage = DocumentPackage.open(root)) {
+            streaming = cache.key(documentPackage, DocumentPackage.DOCUMENT_PART, DocumentPackage.RELATIONS_PART, "streaming");
+            dom = cache.key(documentPackage, DocumentPackage.DOCUMENT_PART, DocumentPackage.RELATIONS_PART, "dom");
+            assertEquals(streaming, cache.key(documentPackage, DocumentPackage.DOCUMENT_PART, DocumentPackage.RELATIONS_PART, "streaming"));
+        }
+        assertNotEquals(streaming, dom);
+
+        Files.write(root.resolve(DocumentPackage.RELATIONS_PART), TestDocuments.utf8(TestDocuments.relationships(TestDocuments.relationship("rId1", "media/image1.png"))));
+        try (DocumentPackage documentPackage = DocumentPackage.open(root)) {
+            assertNotEquals(streaming, cache.key(documentPackage, DocumentPackage.DOCUMENT_PART, DocumentPackage.RELATIONS_PART, "streaming"));
+        }
+    }
+
+    private static PartScan partScan(int graphicCount) {
+        List<Graphic> graphics = new ArrayList<>();
+        for (int i = 0; i < graphicCount; i++) {
+            graphics.add(new Graphic(i, "rId7", "picture" + i + ".png", i, i));
+        }
+        return new PartScan(DocumentPackage.DOCUMENT_PART, DocumentPackage.RELATIONS_PART,
+                new DocumentScan(Collections.nCopies(graphicCount, "rId7"), graphics), new LinkedHashMap<>(), Collections.emptyList());
+    }
+}
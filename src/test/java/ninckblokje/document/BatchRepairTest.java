@@ -0,0 +1,104 @@
+package ninckblokje.document;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchRepairTest {
+
+    @TempDir
+    Path folder;
+
+    private RepairOptions options;
+
+    @BeforeEach
+    void writeMissingImages() throws Exception {
+        Path missingImages = Files.createDirectories(folder.resolve("missing"));
+        Files.write(missingImages.resolve("logo.png"), TestDocuments.PNG);
+
+        options = new RepairOptions();
+        options.setMissingImagesFolder(missingImages);
+        options.setDoneFolder(null);
+        options.setThreads(1);
+        options.setDeflateThreads(1);
+    }
+
+    @Test
+    void equalFileNamesInDifferentFoldersGetTheirOwnOutput() throws Exception {
+        Path first = writeDocument(folder.resolve("input/a/report.docx"));
+        Path second = writeDocument(folder.resolve("input/b/report.docx"));
+        Path output = folder.resolve("output");
+
+        List<DocumentReport> reports = BatchRepair.run(Arrays.asList(first, second), options, output, 2);
+
+        assertEquals(2, reports.size());
+        for (DocumentReport report : reports) {
+            assertFalse(report.isFailed());
+            assertEquals(1, report.getImagesAdded());
+        }
+        assertTrue(Files.isRegularFile(output.resolve("a/report.docx")));
+        assertTrue(Files.isRegularFile(output.resolve("b/report.docx")));
+        assertFalse(Files.exists(output.resolve("report.docx")));
+    }
+
+    @Test
+    void documentsOfOneFolderKeepTheirFileName() throws Exception {
+        Path document = writeDocument(folder.resolve("input/report.docx"));
+        Path output = folder.resolve("output");
+
+        BatchRepair.run(Collections.singletonList(document), options, output, 1);
+
+        assertTrue(Files.isRegularFile(output.resolve("report.docx")));
+    }
+
+    @Test
+    void documentFolderWithOutputIsRejectedBeforeAnyRepair() throws Exception {
+        Path document = writeDocument(folder.resolve("input/report.docx"));
+        Path unpacked = folder.resolve("unpacked");
+        Map<String, byte[]> parts = parts();
+        TestDocuments.writeFolder(unpacked, parts);
+        Path output = folder.resolve("output");
+
+        assertThrows(IllegalArgumentException.class, () -> BatchRepair.run(Arrays.asList(document, unpacked), options, output, 1));
+
+        assertFalse(Files.exists(output));
+        assertFalse(Files.exists(unpacked.resolve("word/media")));
+        assertArrayEquals(parts.get(DocumentPackage.DOCUMENT_PART), Files.readAllBytes(unpacked.resolve(DocumentPackage.DOCUMENT_PART)));
+    }
+
+    @Test
+    void documentListedTwiceWithOutputIsRejected() throws Exception {
+        Path document = writeDocument(folder.resolve("input/report.docx"));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> BatchRepair.run(Arrays.asList(document, document.getParent().resolve("../input/report.docx")), options, folder.resolve("output"), 1));
+    }
+
+    private static Path writeDocument(Path path) throws Exception {
+        Files.createDirectories(path.getParent());
+        TestDocuments.writePackage(path, parts());
+        return path;
+    }
+
+    private static Map<String, byte[]> parts() {
+        Map<String, byte[]> parts = new LinkedHashMap<>();
+        parts.put(ContentTypes.CONTENT_TYPES_PART, TestDocuments.utf8(TestDocuments.contentTypes()));
+        parts.put(DocumentPackage.DOCUMENT_PART, TestDocuments.utf8(TestDocuments.document(TestDocuments.picture(1, "logo.png", "rId7"))));
+        parts.put(DocumentPackage.RELATIONS_PART, TestDocuments.utf8(TestDocuments.relationships()));
+        return parts;
+    }
+}
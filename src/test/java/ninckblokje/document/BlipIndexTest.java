@@ -0,0 +1,55 @@
+package ninckblokje.document;
+
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BlipIndexTest {
+
+    @Test
+    void updatedBlipIsRemovedForEveryName() throws Exception {
+        // the first picture carries two names, both point to the same blip
+        String shared = TestDocuments.picture(1, "logo.png", "rId7")
+                .replace("<pic:cNvPicPr/>", "<pic:cNvPr id=\"9\" name=\"banner.png\"/><pic:cNvPicPr/>");
+        Document doc = parse(TestDocuments.document(shared + TestDocuments.picture(2, "banner.png", "rId7") + TestDocuments.picture(3, "other.png", "rId3")));
+
+        BlipIndex blipIndex = BlipIndex.build(doc, "rId7");
+
+        assertEquals(1, blipIndex.count("logo.png"));
+        assertEquals(2, blipIndex.count("banner.png"));
+        assertEquals(0, blipIndex.count("other.png"));
+
+        blipIndex.update("logo.png", "rId20");
+
+        assertEquals(0, blipIndex.count("logo.png"));
+        assertEquals(1, blipIndex.count("banner.png"));
+
+        blipIndex.update("banner.png", "rId21");
+
+        assertEquals(0, blipIndex.count("banner.png"));
+        assertEquals(Arrays.asList("rId20", "rId21", "rId3"), embeds(doc));
+        assertThrows(IllegalStateException.class, () -> blipIndex.update("banner.png", "rId22"));
+    }
+
+    private static Document parse(String document) throws Exception {
+        return FixImages.getDocumentBuilderFactory().newDocumentBuilder().parse(new ByteArrayInputStream(TestDocuments.utf8(document)));
+    }
+
+    private static List<String> embeds(Document doc) {
+        List<String> embeds = new ArrayList<>();
+        NodeList blips = doc.getElementsByTagNameNS(DocumentScanner.DRAWINGML_NS, "blip");
+        for (int i = 0; i < blips.getLength(); i++) {
+            embeds.add(((Element) blips.item(i)).getAttributeNS(DocumentScanner.RELATIONSHIPS_NS, "embed"));
+        }
+        return embeds;
+    }
+}
@@ -0,0 +1,58 @@
+package ninckblokje.document;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConsistencyAnalyzerTest {
+
+    @Test
+    void splitsMediaIntoFoundAndOrphan() {
+        Map<String, String> relations = new LinkedHashMap<>();
+        relations.put("rId1", "media/image1.png");
+        relations.put("rId2", "media/image2.png");
+
+        ConsistencyResult result = ConsistencyAnalyzer.analyze(Arrays.asList("media/image1.png", "media/image3.png", "media/image2.png"),
+                relations, Collections.emptyList(), Collections.emptyList());
+
+        assertEquals(Arrays.asList("media/image1.png", "media/image2.png"), result.getFoundMediaFiles());
+        assertEquals(Collections.singletonList("media/image3.png"), result.getOrphanMediaFiles());
+        assertTrue(result.getMissingMediaFiles().isEmpty());
+    }
+
+    @Test
+    void missingMediaSkipsXmlTargets() {
+        Map<String, String> relations = new LinkedHashMap<>();
+        relations.put("rId1", "styles.xml");
+        relations.put("rId2", "media/image2.png");
+        relations.put("rId3", "Settings.XML");
+        relations.put("rId4", "media/image4.jpeg");
+
+        ConsistencyResult result = ConsistencyAnalyzer.analyze(Collections.singletonList("media/image4.jpeg"),
+                relations, Collections.emptyList(), Collections.emptyList());
+
+        assertEquals(Collections.singletonList("media/image2.png"), result.getMissingMediaFiles());
+    }
+
+    @Test
+    void countsDanglingEmbedsInFirstSeenOrder() {
+        Map<String, String> relations = new LinkedHashMap<>();
+        relations.put("rId1", "media/image1.png");
+
+        ConsistencyResult result = ConsistencyAnalyzer.analyze(Collections.singletonList("media/image1.png"), relations,
+                Collections.singletonList("rId5"), Arrays.asList("rId9", "rId1", "rId7", "rId9", "rId1", "rId9"));
+
+        assertEquals(2, result.getFoundEmbeddedRelationIds());
+        assertEquals(4, result.getNotFoundEmbeddedRelationIds());
+        assertEquals(Arrays.asList("rId9", "rId7"), result.getErroneousRelationIds());
+        assertEquals(3, result.getDanglingEmbeds().get("rId9"));
+        assertEquals(1, result.getDanglingEmbeds().get("rId7"));
+        assertEquals(Collections.singletonList("rId5"), result.getNullTargetRelationIds());
+    }
+}
@@ -0,0 +1,43 @@
+package ninckblokje.document;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ContentTypesTest {
+
+    @TempDir
+    Path root;
+
+    @Test
+    void defaultsAreAddedForNewImageExtensions() throws Exception {
+        Map<String, byte[]> parts = new LinkedHashMap<>();
+        parts.put(ContentTypes.CONTENT_TYPES_PART, TestDocuments.utf8(TestDocuments.contentTypes()));
+        parts.put("word/media/image1.png", TestDocuments.PNG);
+        parts.put("word/media/image2.JPG", TestDocuments.PNG);
+        parts.put("word/media/data.bin", TestDocuments.PNG);
+        TestDocuments.writeFolder(root, parts);
+        Path gif = Files.write(root.resolve("logo.gif"), TestDocuments.PNG);
+
+        try (DocumentPackage documentPackage = DocumentPackage.open(root)) {
+            MediaTransfer mediaTransfer = new MediaTransfer();
+            mediaTransfer.plan(gif, DocumentPackage.MEDIA_FOLDER + "image3.gif");
+
+            assertEquals(2, ContentTypes.update(documentPackage, mediaTransfer));
+            assertEquals(0, ContentTypes.update(documentPackage, mediaTransfer));
+        }
+
+        String contentTypes = Files.readString(root.resolve(ContentTypes.CONTENT_TYPES_PART));
+        assertTrue(contentTypes.endsWith("<Override PartName=\"/word/document.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.wordprocessingml.document.main+xml\"/>"
+                + "<Default Extension=\"gif\" ContentType=\"image/gif\"/>"
+                + "<Default Extension=\"jpg\" ContentType=\"image/jpeg\"/></Types>"), contentTypes);
+        assertTrue(contentTypes.contains("<Default Extension=\"png\" ContentType=\"image/png\"/>"));
+    }
+}
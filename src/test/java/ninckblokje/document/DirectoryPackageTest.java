@@ -0,0 +1,79 @@
+package ninckblokje.document;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class DirectoryPackageTest {
+
+    @TempDir
+    Path root;
+
+    @BeforeEach
+    void writeDocument() throws Exception {
+        assumeTrue(Files.getFileStore(root).supportsFileAttributeView(PosixFileAttributeView.class));
+
+        Map<String, byte[]> parts = new LinkedHashMap<>();
+        parts.put(DocumentPackage.DOCUMENT_PART, TestDocuments.utf8(TestDocuments.document(TestDocuments.picture(1, "logo.png", "rId7"))));
+        parts.put(DocumentPackage.RELATIONS_PART, TestDocuments.utf8(TestDocuments.relationships()));
+        TestDocuments.writeFolder(root, parts);
+    }
+
+    @Test
+    void commitOnlyUpdatesInPlace() throws Exception {
+        DirectoryPackage documentPackage = new DirectoryPackage(root);
+        documentPackage.commit(null, new RepairOptions());
+        documentPackage.commit(root, new RepairOptions());
+
+        assertThrows(IllegalArgumentException.class, () -> documentPackage.commit(root.resolveSibling("other.docx"), new RepairOptions()));
+    }
+
+    @Test
+    void newTempFileIsNotOwnerOnly() throws Exception {
+        Path tempFile = new DirectoryPackage(root).newTempFile(DocumentPackage.DOCUMENT_PART);
+
+        assertEquals(root.resolve("word"), tempFile.getParent());
+        assertNotEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(tempFile)));
+    }
+
+    @Test
+    void replacePartKeepsPermissions() throws Exception {
+        Path part = root.resolve(DocumentPackage.DOCUMENT_PART);
+        Files.setPosixFilePermissions(part, PosixFilePermissions.fromString("rw-r-----"));
+
+        DirectoryPackage documentPackage = new DirectoryPackage(root);
+        Path tempFile = documentPackage.newTempFile(DocumentPackage.DOCUMENT_PART);
+        Files.write(tempFile, TestDocuments.utf8(TestDocuments.document("")));
+        documentPackage.replacePart(DocumentPackage.DOCUMENT_PART, tempFile);
+
+        assertEquals("rw-r-----", PosixFilePermissions.toString(Files.getPosixFilePermissions(part)));
+        assertEquals(TestDocuments.document(""), Files.readString(part));
+    }
+
+    @Test
+    void savePartKeepsPermissions() throws Exception {
+        Path part = root.resolve(DocumentPackage.DOCUMENT_PART);
+        Files.setPosixFilePermissions(part, PosixFilePermissions.fromString("rw-rw-r--"));
+
+        DirectoryPackage documentPackage = new DirectoryPackage(root);
+        documentPackage.savePart(DocumentPackage.DOCUMENT_PART, documentPackage.parsePart(DocumentPackage.DOCUMENT_PART));
+
+        assertEquals("rw-rw-r--", PosixFilePermissions.toString(Files.getPosixFilePermissions(part)));
+        try (Stream<Path> files = Files.list(part.getParent())) {
+            assertEquals(1, files.filter(Files::isRegularFile).count());
+        }
+    }
+}
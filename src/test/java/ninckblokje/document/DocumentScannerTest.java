@@ -0,0 +1,60 @@
+package ninckblokje.document;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class DocumentScannerTest {
+
+    @Test
+    void scanFindsGraphicsInDocumentOrder() throws Exception {
+        String body = TestDocuments.paragraph("before")
+                + TestDocuments.picture(1, "logo.png", "rId7")
+                + TestDocuments.paragraph("between")
+                + TestDocuments.picture(2, "photo.jpg", "rId10");
+
+        DocumentScan scan = DocumentScanner.scan(new ByteArrayInputStream(TestDocuments.utf8(TestDocuments.document(body))));
+
+        assertEquals(Arrays.asList("rId7", "rId10"), scan.getEmbeddedRelationIds());
+        List<Graphic> graphics = scan.getGraphics();
+        assertEquals(2, graphics.size());
+        assertEquals(0, graphics.get(0).getIndex());
+        assertEquals("logo.png", graphics.get(0).getFilename());
+        assertEquals("rId7", graphics.get(0).getRelationId());
+        assertEquals(1080000, graphics.get(0).getExtentCx());
+        assertEquals(720000, graphics.get(0).getExtentCy());
+        assertEquals("photo.jpg", graphics.get(1).getFilename());
+    }
+
+    @Test
+    void scanSkipsGraphicsWithoutPicture() throws Exception {
+        String chart = "<w:p><w:r><w:drawing><wp:inline><a:graphic><a:graphicData uri=\"chart\"/></a:graphic></wp:inline></w:drawing></w:r></w:p>";
+
+        DocumentScan scan = DocumentScanner.scan(new ByteArrayInputStream(TestDocuments.utf8(TestDocuments.document(chart + TestDocuments.picture(1, "logo.png", "rId7")))));
+
+        assertEquals(1, scan.getGraphics().size());
+        assertEquals(1, scan.getGraphics().get(0).getIndex());
+    }
+
+    @Test
+    void parseExtentFallsBackToZero() {
+        assertEquals(0, DocumentScanner.parseExtent(null));
+        assertEquals(0, DocumentScanner.parseExtent("12.5"));
+        assertEquals(914400, DocumentScanner.parseExtent("914400"));
+    }
+
+    @Test
+    void scanKeepsMissingEmbedAsNullRelation() throws Exception {
+        String picture = TestDocuments.picture(1, "logo.png", "rId7").replace(" r:embed=\"rId7\"", "");
+
+        DocumentScan scan = DocumentScanner.scan(new ByteArrayInputStream(TestDocuments.utf8(TestDocuments.document(picture))));
+
+        assertEquals(1, scan.getGraphics().size());
+        assertNull(scan.getGraphics().get(0).getRelationId());
+    }
+}
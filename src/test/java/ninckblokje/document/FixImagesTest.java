@@ -0,0 +1,180 @@
+package ninckblokje.document;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FixImagesTest {
+
+    @TempDir
+    Path folder;
+
+    private RepairOptions options;
+
+    @BeforeEach
+    void writeMissingImages() throws Exception {
+        Path missingImages = Files.createDirectories(folder.resolve("missing"));
+        Files.write(missingImages.resolve("logo.png"), TestDocuments.PNG);
+
+        options = new RepairOptions();
+        options.setMissingImagesFolder(missingImages);
+        options.setDoneFolder(null);
+        options.setThreads(1);
+        options.setDeflateThreads(1);
+    }
+
+    @Test
+    void repairRewritesEmbedsAndRelations() throws Exception {
+        for (boolean streaming : new boolean[]{false, true}) {
+            Path root = writeDocument(streaming ? "streaming" : "dom",
+                    TestDocuments.picture(1, "logo.png", "rId7") + TestDocuments.picture(2, "unknown.png", "rId7") + TestDocuments.picture(3, "logo.png", "rId7"),
+                    TestDocuments.relationship("rId1", "media/image1.png"));
+
+            assertEquals(2, repair(root, streaming));
+
+            assertEquals(Arrays.asList("rId8", "rId7", "rId8"), DocumentScanner.scan(root.resolve(DocumentPackage.DOCUMENT_PART)).getEmbeddedRelationIds());
+            Map<String, String> relations = readRelations(root);
+            assertEquals(2, relations.size());
+            assertEquals("media/image3.png", relations.get("rId8"));
+            if (streaming) {
+                // the streaming rewrite keeps the attribute order of the source
+                assertTrue(Files.readString(root.resolve(DocumentPackage.RELATIONS_PART))
+                        .contains(TestDocuments.relationship("rId1", "media/image1.png") + TestDocuments.relationship("rId8", "media/image3.png")));
+            }
+            assertArrayEquals(TestDocuments.PNG, Files.readAllBytes(root.resolve(DocumentPackage.MEDIA_FOLDER + "image3.png")));
+        }
+    }
+
+    @Test
+    void reusedGapSkipsPlaceholderAndEmbeddedIds() throws Exception {
+        options.setReuseGaps(true);
+
+        for (boolean streaming : new boolean[]{false, true}) {
+            // rId2 is only referred to by an embed and rId7 is the placeholder, neither is a free gap
+            Path root = writeDocument(streaming ? "streaming" : "dom",
+                    TestDocuments.picture(1, "logo.png", "rId7") + TestDocuments.picture(2, "unknown.png", "rId7") + TestDocuments.picture(3, "other.png", "rId2"),
+                    TestDocuments.relationship("rId1", "media/image1.png"), TestDocuments.relationship("rId3", "media/image2.png"),
+                    TestDocuments.relationship("rId4", "media/image2.png"), TestDocuments.relationship("rId5", "media/image2.png"),
+                    TestDocuments.relationship("rId6", "media/image2.png"), TestDocuments.relationship("rId8", "media/image2.png"));
+
+            assertEquals(1, repair(root, streaming));
+
+            assertEquals(Arrays.asList("rId9", "rId7", "rId2"), DocumentScanner.scan(root.resolve(DocumentPackage.DOCUMENT_PART)).getEmbeddedRelationIds());
+            Map<String, String> relations = readRelations(root);
+            assertEquals(7, relations.size());
+            assertEquals("media/image3.png", relations.get("rId9"));
+            assertFalse(relations.containsKey("rId7"));
+            assertFalse(relations.containsKey("rId2"));
+        }
+    }
+
+    @Test
+    void duplicateContentReusesExistingRelationship() throws Exception {
+        Files.write(options.getMissingImagesFolder().resolve("copy.png"), TestDocuments.png(10, 10));
+
+        for (boolean streaming : new boolean[]{false, true}) {
+            Path root = writeDocument(streaming ? "streaming" : "dom",
+                    TestDocuments.picture(1, "copy.png", "rId7") + TestDocuments.picture(2, "logo.png", "rId7") + TestDocuments.picture(3, "copy.png", "rId7"),
+                    TestDocuments.relationship("rId1", "media/image1.png"), TestDocuments.relationship("rId2", "media/image2.png"));
+
+            assertEquals(3, repair(root, streaming));
+
+            assertEquals(Arrays.asList("rId1", "rId8", "rId1"), DocumentScanner.scan(root.resolve(DocumentPackage.DOCUMENT_PART)).getEmbeddedRelationIds());
+            Map<String, String> relations = readRelations(root);
+            assertEquals(3, relations.size());
+            assertEquals("media/image3.png", relations.get("rId8"));
+            try (Stream<Path> media = Files.list(root.resolve(DocumentPackage.MEDIA_FOLDER))) {
+                assertEquals(3, media.count());
+            }
+        }
+    }
+
+    @Test
+    void headerAndFooterGetRelationIdsOfTheirOwn() throws Exception {
+        for (boolean streaming : new boolean[]{false, true}) {
+            Path root = writeDocument(streaming ? "streaming" : "dom", TestDocuments.picture(1, "logo.png", "rId7"),
+                    TestDocuments.relationship("rId1", "media/image1.png"), TestDocuments.relationship("rId3", "media/image2.png"));
+            Map<String, byte[]> parts = new LinkedHashMap<>();
+            parts.put("word/header1.xml", TestDocuments.utf8(TestDocuments.document(TestDocuments.picture(1, "logo.png", "rId7"))));
+            parts.put("word/_rels/header1.xml.rels", TestDocuments.utf8(TestDocuments.relationships(TestDocuments.relationship("rId9", "media/image1.png"))));
+            parts.put("word/footer1.xml", TestDocuments.utf8(TestDocuments.document(TestDocuments.picture(1, "logo.png", "rId7"))));
+            parts.put("word/_rels/footer1.xml.rels", TestDocuments.utf8(TestDocuments.relationships()));
+            TestDocuments.writeFolder(root, parts);
+
+            assertEquals(3, repair(root, streaming));
+
+            assertEmbed(root, DocumentPackage.DOCUMENT_PART, "rId8", 3);
+            assertEmbed(root, "word/header1.xml", "rId10", 2);
+            assertEmbed(root, "word/footer1.xml", "rId8", 1);
+            // the parts share the copied image, it is only added once
+            try (Stream<Path> media = Files.list(root.resolve(DocumentPackage.MEDIA_FOLDER))) {
+                assertEquals(3, media.count());
+            }
+        }
+    }
+
+    @Test
+    void mediaIsHashedOnFirstLookup() throws Exception {
+        Path root = writeDocument("lazy", "", TestDocuments.relationship("rId1", "media/image1.png"));
+
+        try (DocumentPackage documentPackage = DocumentPackage.open(root)) {
+            MediaDigestIndex index = MediaDigestIndex.build(documentPackage, Collections.emptyMap())
+                    .forRelations(Collections.singletonMap("rId1", "media/image1.png"));
+            assertFalse(index.isIndexed());
+
+            String digest = MediaDigestIndex.digest(new ByteArrayInputStream(TestDocuments.png(10, 10)));
+            assertEquals("rId1", index.findRelation(digest).getrId());
+            assertTrue(index.isIndexed());
+        }
+    }
+
+    private Path writeDocument(String name, String body, String... relationships) throws Exception {
+        Path root = folder.resolve(name);
+        Map<String, byte[]> parts = new LinkedHashMap<>();
+        parts.put(ContentTypes.CONTENT_TYPES_PART, TestDocuments.utf8(TestDocuments.contentTypes()));
+        parts.put(DocumentPackage.DOCUMENT_PART, TestDocuments.utf8(TestDocuments.document(body)));
+        parts.put(DocumentPackage.RELATIONS_PART, TestDocuments.utf8(TestDocuments.relationships(relationships)));
+        parts.put("word/media/image1.png", TestDocuments.png(10, 10));
+        parts.put("word/media/image2.png", TestDocuments.png(20, 10));
+        TestDocuments.writeFolder(root, parts);
+        return root;
+    }
+
+    private int repair(Path root, boolean streaming) throws Exception {
+        try (DocumentPackage documentPackage = DocumentPackage.open(root)) {
+            return streaming ? FixImages.repairStreaming(documentPackage, options, null) : FixImages.repair(documentPackage, options, null);
+        }
+    }
+
+    private static Map<String, String> readRelations(Path root) throws Exception {
+        return readRelations(root, DocumentPackage.RELATIONS_PART);
+    }
+
+    private static Map<String, String> readRelations(Path root, String relationsPart) throws Exception {
+        try (InputStream in = Files.newInputStream(root.resolve(relationsPart))) {
+            return StreamingRewriter.readRelations(in);
+        }
+    }
+
+    private static void assertEmbed(Path root, String part, String rId, int relationCount) throws Exception {
+        assertEquals(Collections.singletonList(rId), DocumentScanner.scan(root.resolve(part)).getEmbeddedRelationIds(), part);
+        Map<String, String> relations = readRelations(root, PackageScanner.getRelationsPart(part));
+        assertEquals(relationCount, relations.size(), part);
+        assertEquals("media/image3.png", relations.get(rId), part);
+    }
+}
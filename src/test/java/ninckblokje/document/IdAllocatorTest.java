@@ -0,0 +1,104 @@
+package ninckblokje.document;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class IdAllocatorTest {
+
+    @Test
+    void allocatesAfterHighestIdWithoutGapReuse() {
+        IdAllocator allocator = new IdAllocator(false);
+        allocator.markUsed(3);
+        allocator.markUsed(10);
+
+        assertEquals(11, allocator.allocate());
+        assertEquals(12, allocator.allocate());
+        assertEquals("4 used, max 12", allocator.toString());
+    }
+
+    @Test
+    void fillsGapsWhenReusing() {
+        IdAllocator allocator = new IdAllocator(true);
+        allocator.markUsed(1);
+        allocator.markUsed(2);
+        allocator.markUsed(4);
+
+        assertEquals(3, allocator.allocate());
+        assertEquals(5, allocator.allocate());
+        assertEquals(6, allocator.allocate());
+    }
+
+    @Test
+    void reusesGapsAcrossWordBoundaries() {
+        IdAllocator allocator = new IdAllocator(true);
+        for (int id = 1; id <= 130; id++) {
+            if (id != 64 && id != 128) {
+                allocator.markUsed(id);
+            }
+        }
+
+        assertEquals(64, allocator.allocate());
+        assertEquals(128, allocator.allocate());
+        assertEquals(131, allocator.allocate());
+        assertEquals("131 used, max 131", allocator.toString());
+    }
+
+    @Test
+    void ignoresIdsBelowOneAndDuplicates() {
+        IdAllocator allocator = new IdAllocator(true);
+        allocator.markUsed(0);
+        allocator.markUsed(-5);
+        allocator.markUsed(1);
+        allocator.markUsed(1);
+
+        assertEquals("1 used, max 1", allocator.toString());
+        assertEquals(2, allocator.allocate());
+    }
+
+    @Test
+    void reserveHandsOutTheIdsAllocateWould() {
+        IdAllocator allocator = new IdAllocator(true);
+        allocator.markUsed(1);
+        allocator.markUsed(3);
+        allocator.markUsed(5);
+
+        assertArrayEquals(new int[]{2, 4, 6}, allocator.reserve(3));
+        assertArrayEquals(new int[0], allocator.reserve(0));
+        assertEquals(7, allocator.allocate());
+        assertEquals("7 used, max 7", allocator.toString());
+    }
+
+    @Test
+    void walkerUsesReservedIdsFirst() {
+        IdAllocator allocator = new IdAllocator(false);
+        allocator.markUsed(4);
+        RIdWalker walker = new RIdWalker(allocator);
+
+        walker.reserve(2);
+        allocator.markUsed(10);
+
+        assertEquals("rId5", walker.next().getrId());
+        assertEquals("rId6", walker.next().getrId());
+        assertEquals("rId11", walker.next().getrId());
+    }
+
+    @Test
+    void startingAfterNeverReusesLowerIds() {
+        IdAllocator allocator = IdAllocator.startingAfter(7);
+
+        assertEquals(8, allocator.allocate());
+        assertEquals(9, allocator.allocate());
+    }
+
+    @Test
+    void markRIdUsedOnlyCountsRelationIds() {
+        IdAllocator allocator = new IdAllocator(false);
+        FixImages.markRIdUsed(allocator, "rId5");
+        FixImages.markRIdUsed(allocator, "rIdx");
+        FixImages.markRIdUsed(allocator, "image9");
+
+        assertEquals(6, allocator.allocate());
+    }
+}
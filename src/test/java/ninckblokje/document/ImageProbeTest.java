@@ -0,0 +1,92 @@
+package ninckblokje.document;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ImageProbeTest {
+
+    private static final byte[] JPEG = {
+            (byte) 0xff, (byte) 0xd8,
+            (byte) 0xff, (byte) 0xe0, 0x00, 0x10, 'J', 'F', 'I', 'F', 0x00, 0x01, 0x01, 0x00, 0x00, 0x01, 0x00, 0x01, 0x00, 0x00,
+            (byte) 0xff, (byte) 0xc0, 0x00, 0x11, 0x08, 0x00, 0x20, 0x00, 0x40, 0x03, 0x01, 0x22, 0x00, 0x02, 0x11, 0x01, 0x03, 0x11, 0x01,
+            (byte) 0xff, (byte) 0xd9
+    };
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void probesPng() throws Exception {
+        ImageInfo imageInfo = probe(TestDocuments.png(640, 480));
+
+        assertEquals(ImageFormat.PNG, imageInfo.getFormat());
+        assertEquals(640, imageInfo.getWidth());
+        assertEquals(480, imageInfo.getHeight());
+    }
+
+    @Test
+    void probesGif() throws Exception {
+        ImageInfo imageInfo = probe(new byte[]{'G', 'I', 'F', '8', '9', 'a', 0x2c, 0x01, (byte) 0xc8, 0x00});
+
+        assertEquals(ImageFormat.GIF, imageInfo.getFormat());
+        assertEquals(300, imageInfo.getWidth());
+        assertEquals(200, imageInfo.getHeight());
+    }
+
+    @Test
+    void probesJpegFrameHeader() throws Exception {
+        ImageInfo imageInfo = probe(JPEG);
+
+        assertEquals(ImageFormat.JPEG, imageInfo.getFormat());
+        assertEquals(64, imageInfo.getWidth());
+        assertEquals(32, imageInfo.getHeight());
+    }
+
+    @Test
+    void truncatedJpegIsUnknown() throws Exception {
+        assertNull(probe(Arrays.copyOf(JPEG, 24)));
+        assertNull(probe(Arrays.copyOf(JPEG, 8)));
+    }
+
+    @Test
+    void unknownHeaderIsUnknown() throws Exception {
+        assertNull(probe("not an image".getBytes()));
+        assertNull(probe(new byte[0]));
+    }
+
+    @Test
+    void extensionComesFromContentWhenKnown() throws Exception {
+        Path photo = folder.resolve("photo.png");
+        Files.write(photo, JPEG);
+
+        assertEquals("jpeg", FixImages.getExtension(photo));
+    }
+
+    @Test
+    void extensionFallsBackToFileNameForTruncatedJpeg() throws Exception {
+        Path photo = folder.resolve("photo.jpg");
+        Files.write(photo, Arrays.copyOf(JPEG, 24));
+
+        assertEquals("jpg", FixImages.getExtension(photo));
+    }
+
+    @Test
+    void formatFromExtensionKnowsJpegAliases() {
+        assertEquals(ImageFormat.JPEG, ImageFormat.fromExtension("JPG"));
+        assertEquals(ImageFormat.JPEG, ImageFormat.fromExtension("jpe"));
+        assertEquals(ImageFormat.EMF, ImageFormat.fromExtension("emf"));
+        assertNull(ImageFormat.fromExtension("txt"));
+    }
+
+    private static ImageInfo probe(byte[] data) throws Exception {
+        return ImageProbe.probe(new ByteArrayInputStream(data));
+    }
+}
@@ -0,0 +1,71 @@
+package ninckblokje.document;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MediaDownscalerTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void downscalesToRequiredExtent() throws Exception {
+        writeImage("large.png", 400, 400);
+        MediaTransfer mediaTransfer = new MediaTransfer();
+        mediaTransfer.plan(folder.resolve("large.png"), "word/media/image1.png");
+
+        Map<String, long[]> extents = new HashMap<>();
+        extents.put("large.png", new long[]{MediaDownscaler.EMU_PER_INCH, MediaDownscaler.EMU_PER_INCH});
+
+        assertTrue(new MediaDownscaler(100, 64L * 1024 * 1024).downscale(mediaTransfer, extents, folder, 1) > 0);
+        mediaTransfer.moveDone(null);
+    }
+
+    @Test
+    void sharedContentKeepsLargestExtent() throws Exception {
+        writeImage("small.png", 400, 400);
+        Files.copy(folder.resolve("small.png"), folder.resolve("same.png"));
+        MediaTransfer mediaTransfer = new MediaTransfer();
+        mediaTransfer.plan(folder.resolve("small.png"), "word/media/image1.png");
+
+        // same.png was deduplicated onto the transfer of small.png and needs every pixel
+        Map<String, long[]> extents = new HashMap<>();
+        extents.put("small.png", new long[]{MediaDownscaler.EMU_PER_INCH, MediaDownscaler.EMU_PER_INCH});
+        extents.put("same.png", new long[]{4 * MediaDownscaler.EMU_PER_INCH, 4 * MediaDownscaler.EMU_PER_INCH});
+
+        assertEquals(0, new MediaDownscaler(100, 64L * 1024 * 1024).downscale(mediaTransfer, extents, folder, 1));
+    }
+
+    @Test
+    void undecodableImageIsCopiedUnchanged() throws Exception {
+        // a valid header followed by nothing, the probe sees 4000x4000 but the decoder fails
+        Files.write(folder.resolve("broken.png"), TestDocuments.png(4000, 4000));
+        MediaTransfer mediaTransfer = new MediaTransfer();
+        mediaTransfer.plan(folder.resolve("broken.png"), "word/media/image1.png");
+
+        Map<String, long[]> extents = new HashMap<>();
+        extents.put("broken.png", new long[]{MediaDownscaler.EMU_PER_INCH, MediaDownscaler.EMU_PER_INCH});
+
+        assertEquals(0, new MediaDownscaler(100, 64L * 1024 * 1024).downscale(mediaTransfer, extents, folder, 1));
+    }
+
+    private void writeImage(String name, int width, int height) throws Exception {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, x * 7919 ^ y * 104729);
+            }
+        }
+        ImageIO.write(image, "png", folder.resolve(name).toFile());
+    }
+}
@@ -0,0 +1,57 @@
+package ninckblokje.document;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MediaTransferTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void duplicateSourcesAreMovedOnce() throws Exception {
+        Path missingImages = Files.createDirectories(folder.resolve("missing"));
+        Path doneFolder = Files.createDirectories(folder.resolve("done"));
+        Path logo = Files.write(missingImages.resolve("logo.png"), TestDocuments.PNG);
+        Path banner = Files.write(missingImages.resolve("banner.png"), TestDocuments.png(10, 10));
+        Path resampled = Files.write(folder.resolve("logo-resampled.png"), TestDocuments.png(5, 5));
+
+        MediaTransfer mediaTransfer = new MediaTransfer();
+        mediaTransfer.resample(logo, resampled);
+        mediaTransfer.done(logo);
+        mediaTransfer.done(banner);
+        mediaTransfer.done(logo);
+
+        assertEquals(Arrays.asList(logo, banner), new ArrayList<>(mediaTransfer.getDoneImages()));
+
+        mediaTransfer.moveDone(doneFolder);
+
+        assertFalse(Files.exists(logo));
+        assertFalse(Files.exists(banner));
+        assertFalse(Files.exists(resampled));
+        assertArrayEquals(TestDocuments.PNG, Files.readAllBytes(doneFolder.resolve("logo.png")));
+        assertTrue(Files.isRegularFile(doneFolder.resolve("banner.png")));
+    }
+
+    @Test
+    void withoutDoneFolderImagesStay() throws Exception {
+        Path logo = Files.write(folder.resolve("logo.png"), TestDocuments.PNG);
+
+        MediaTransfer mediaTransfer = new MediaTransfer();
+        mediaTransfer.done(logo);
+        mediaTransfer.done(logo);
+        mediaTransfer.moveDone(null);
+
+        assertTrue(Files.isRegularFile(logo));
+    }
+}
@@ -0,0 +1,126 @@
+package ninckblokje.document;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Inflater;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParallelDeflaterTest {
+
+    private final ExecutorService executorService = Executors.newFixedThreadPool(4);
+
+    @AfterEach
+    void shutdown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    void serialDeflateRoundTrips() throws Exception {
+        byte[] data = data(ParallelDeflater.BLOCK_SIZE * 3 + 123);
+
+        assertArrayEquals(data, inflate(deflate(data, null, 0)));
+    }
+
+    @Test
+    void parallelDeflateRoundTrips() throws Exception {
+        byte[] data = data(ParallelDeflater.BLOCK_SIZE * 9 + 4567);
+
+        assertArrayEquals(data, inflate(deflate(data, executorService, 0)));
+    }
+
+    @Test
+    void smallEntryBelowThresholdRoundTrips() throws Exception {
+        byte[] data = data(ParallelDeflater.BLOCK_SIZE * 2 + 10);
+
+        assertArrayEquals(data, inflate(deflate(data, executorService, Long.MAX_VALUE)));
+    }
+
+    @Test
+    void failedWriteReleasesDeflaters() {
+        ParallelDeflater deflater = new ParallelDeflater(new FailingOutputStream(16), executorService, 4, 0);
+        byte[] data = data(ParallelDeflater.BLOCK_SIZE * 20);
+
+        assertThrows(IOException.class, () -> deflater.write(data, 0, data.length));
+        assertTrue(deflater.isReleased());
+        assertThrows(IOException.class, deflater::finish);
+    }
+
+    @Test
+    void failedFinishReleasesDeflaters() throws Exception {
+        ParallelDeflater deflater = new ParallelDeflater(new FailingOutputStream(0), null, 1, 0);
+        byte[] data = data(1000);
+        deflater.write(data, 0, data.length);
+
+        assertThrows(IOException.class, deflater::finish);
+        assertTrue(deflater.isReleased());
+    }
+
+    private static byte[] deflate(byte[] data, ExecutorService executorService, long threshold) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ParallelDeflater deflater = new ParallelDeflater(out, executorService, 4, threshold);
+        // uneven writes so blocks fill across calls
+        for (int offset = 0; offset < data.length; offset += 50000) {
+            deflater.write(data, offset, Math.min(50000, data.length - offset));
+        }
+        deflater.finish();
+        assertTrue(deflater.isReleased());
+        return out.toByteArray();
+    }
+
+    private static byte[] inflate(byte[] compressed) throws Exception {
+        Inflater inflater = new Inflater(true);
+        inflater.setInput(compressed);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[64 * 1024];
+        while (!inflater.finished()) {
+            int count = inflater.inflate(buffer);
+            if (count == 0 && inflater.needsInput()) {
+                break;
+            }
+            out.write(buffer, 0, count);
+        }
+        assertTrue(inflater.finished());
+        inflater.end();
+        return out.toByteArray();
+    }
+
+    private static byte[] data(int length) {
+        byte[] data = new byte[length];
+        byte[] text = TestDocuments.utf8(TestDocuments.paragraph("repeated text that compresses well"));
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (text[i % text.length] + i / 7919);
+        }
+        return data;
+    }
+
+    private static class FailingOutputStream extends OutputStream {
+
+        private long remaining;
+
+        FailingOutputStream(long remaining) {
+            this.remaining = remaining;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len > remaining) {
+                throw new IOException("disk full");
+            }
+            remaining -= len;
+        }
+    }
+}
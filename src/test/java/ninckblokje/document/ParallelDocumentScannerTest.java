@@ -0,0 +1,164 @@
+package ninckblokje.document;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParallelDocumentScannerTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void unescapesEntitiesAndCharacterReferences() {
+        assertEquals("plain", ChunkScanner.unescape("plain"));
+        assertEquals("a & b <c> \"d\" 'e'", ChunkScanner.unescape("a &amp; b &lt;c&gt; &quot;d&quot; &apos;e&apos;"));
+        assertEquals("caf\u00e9 \u00e9", ChunkScanner.unescape("caf&#233; &#xe9;"));
+        assertEquals("&unknown; & open", ChunkScanner.unescape("&unknown; & open"));
+    }
+
+    @Test
+    void unescapeRejectsBrokenCharacterReferences() {
+        assertThrows(IllegalArgumentException.class, () -> ChunkScanner.unescape("&#xzz;"));
+        assertThrows(IllegalArgumentException.class, () -> ChunkScanner.unescape("&#99999999999;"));
+        assertThrows(IllegalArgumentException.class, () -> ChunkScanner.unescape("&#x110000;"));
+    }
+
+    @Test
+    void splitsAfterParagraphsOutsideTextBoxes() {
+        byte[] document = TestDocuments.utf8(textBoxDocument(2000));
+        ByteBuffer buffer = ByteBuffer.wrap(document);
+        Prefixes prefixes = Prefixes.read(buffer);
+
+        List<Integer> boundaries = ParallelDocumentScanner.split(buffer, prefixes, 8);
+
+        assertEquals(9, boundaries.size());
+        assertEquals(0, boundaries.get(0));
+        assertEquals(document.length, boundaries.get(boundaries.size() - 1));
+        for (int i = 1; i < boundaries.size() - 1; i++) {
+            String before = new String(document, 0, boundaries.get(i), StandardCharsets.UTF_8);
+            assertTrue(before.endsWith("</w:p>") || before.endsWith("</w:tbl>"));
+            assertEquals(count(before, "<a:graphic>"), count(before, "</a:graphic>"), "boundary " + i + " is inside a graphic");
+        }
+
+        for (int i = 0; i < boundaries.size() - 1; i++) {
+            ChunkScan chunkScan = new ChunkScanner(buffer.slice(boundaries.get(i), boundaries.get(i + 1) - boundaries.get(i)), prefixes, i == 0).scan();
+            assertTrue(chunkScan.aligned);
+        }
+    }
+
+    @Test
+    void chunkEndingInsideGraphicIsNotAligned() {
+        byte[] document = TestDocuments.utf8(textBoxDocument(1));
+        ByteBuffer buffer = ByteBuffer.wrap(document);
+        Prefixes prefixes = Prefixes.read(buffer);
+        int inside = new String(document, StandardCharsets.UTF_8).indexOf("<wps:txbx>");
+
+        assertFalse(new ChunkScanner(buffer.slice(0, inside), prefixes, true).scan().aligned);
+        assertFalse(new ChunkScanner(buffer.slice(inside, document.length - inside), prefixes).scan().aligned);
+    }
+
+    @Test
+    void chunkWithBrokenCharacterReferenceIsNotAligned() {
+        byte[] document = TestDocuments.utf8(TestDocuments.document(TestDocuments.picture(1, "bad&#xzz;.png", "rId7")));
+        ByteBuffer buffer = ByteBuffer.wrap(document);
+
+        assertFalse(new ChunkScanner(buffer, Prefixes.read(buffer), true).scan().aligned);
+    }
+
+    @Test
+    void namespaceBoundBelowRootIsNotAligned() {
+        String picture = TestDocuments.picture(1, "logo.png", "rId7");
+        ByteBuffer plain = ByteBuffer.wrap(TestDocuments.utf8(TestDocuments.document(picture)));
+        ByteBuffer rebound = ByteBuffer.wrap(TestDocuments.utf8(TestDocuments.document(picture.replace("<w:p>", "<w:p xmlns:a=\"urn:other\">"))));
+
+        assertTrue(new ChunkScanner(plain, Prefixes.read(plain), true).scan().aligned);
+        assertFalse(new ChunkScanner(rebound, Prefixes.read(rebound), true).scan().aligned);
+        assertFalse(new ChunkScanner(plain, Prefixes.read(plain), false).scan().aligned);
+    }
+
+    @Test
+    void parallelScanMatchesSequentialScan() throws Exception {
+        Path file = folder.resolve("document.xml");
+        Files.writeString(file, textBoxDocument(6000));
+
+        DocumentScan parallel = ParallelDocumentScanner.scan(file, 4);
+
+        ParallelDocumentScanner.verify(parallel, DocumentScanner.scan(file));
+        assertEquals(6000, parallel.getGraphics().size());
+    }
+
+    @Test
+    void commentAcrossBoundaryFallsBackToSequentialScan() throws Exception {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            body.append(TestDocuments.picture(i, "picture" + i + ".png", "rId" + i));
+        }
+        // chunks starting inside the comment would count the commented out pictures
+        body.append("<!--");
+        for (int i = 0; i < 40000; i++) {
+            body.append(TestDocuments.paragraph("commented " + i)).append(TestDocuments.picture(i, "commented" + i + ".png", "rId" + i));
+        }
+        body.append("-->");
+        Path file = folder.resolve("document.xml");
+        Files.writeString(file, TestDocuments.document(body.toString()));
+
+        DocumentScan parallel = ParallelDocumentScanner.scan(file, 4);
+
+        ParallelDocumentScanner.verify(parallel, DocumentScanner.scan(file));
+        assertEquals(100, parallel.getGraphics().size());
+    }
+
+    @Test
+    void reboundPrefixFallsBackToSequentialScan() throws Exception {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            body.append(TestDocuments.picture(i, "picture" + i + ".png", "rId" + i));
+            if (i == 10000) {
+                // a:graphic is not a drawing here, only the real parser knows
+                body.append(TestDocuments.picture(i, "other.png", "rId" + i).replace("<w:p>", "<w:p xmlns:a=\"urn:other\">"));
+            }
+        }
+        Path file = folder.resolve("document.xml");
+        Files.writeString(file, TestDocuments.document(body.toString()));
+
+        DocumentScan parallel = ParallelDocumentScanner.scan(file, 4);
+
+        ParallelDocumentScanner.verify(parallel, DocumentScanner.scan(file));
+        assertEquals(20000, parallel.getGraphics().size());
+    }
+
+    private static String textBoxDocument(int count) {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            body.append(TestDocuments.paragraph("text " + i));
+            // a text box graphic holds paragraphs of its own
+            body.append("<w:p><w:r><w:drawing><wp:anchor><wp:extent cx=\"100\" cy=\"200\"/><a:graphic>")
+                    .append("<a:graphicData><wps:wsp><wps:txbx>")
+                    .append(TestDocuments.paragraph("inside " + i)).append(TestDocuments.paragraph("more inside " + i))
+                    .append("</wps:txbx></wps:wsp>")
+                    .append(String.format("<pic:pic><pic:nvPicPr><pic:cNvPr id=\"%d\" name=\"box%d.png\"/></pic:nvPicPr>", i, i))
+                    .append(String.format("<pic:blipFill><a:blip r:embed=\"rId%d\"/></pic:blipFill></pic:pic>", i))
+                    .append("</a:graphicData></a:graphic></wp:anchor></w:drawing></w:r></w:p>");
+        }
+        return TestDocuments.document(body.toString());
+    }
+
+    private static int count(String value, String pattern) {
+        int count = 0;
+        for (int i = value.indexOf(pattern); i >= 0; i = value.indexOf(pattern, i + 1)) {
+            count++;
+        }
+        return count;
+    }
+}
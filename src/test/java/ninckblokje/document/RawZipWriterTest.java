@@ -0,0 +1,146 @@
+package ninckblokje.document;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RawZipWriterTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void copiedAndWrittenEntriesReadBack() throws Exception {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put(DocumentPackage.DOCUMENT_PART, TestDocuments.utf8(TestDocuments.document(TestDocuments.paragraph("text"))));
+        entries.put("word/media/stored.png", TestDocuments.PNG);
+        entries.put("word/media/caf\u00e9.png", TestDocuments.png(10, 10));
+        Path source = folder.resolve("source.docx");
+        writeSource(source, entries);
+
+        byte[] large = new byte[ParallelDeflater.BLOCK_SIZE * 5 + 99];
+        for (int i = 0; i < large.length; i++) {
+            large[i] = (byte) (i % 251 + i / 4099);
+        }
+        byte[] small = TestDocuments.utf8(TestDocuments.relationships(TestDocuments.relationship("rId1", "media/stored.png")));
+
+        Path target = folder.resolve("target.docx");
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ);
+             RawZipWriter out = new RawZipWriter(new BufferedOutputStream(Files.newOutputStream(target)), executorService, 2, 0)) {
+            for (CentralRecord record : RawZipWriter.readCentralDirectory(channel)) {
+                out.copyEntry(channel, record);
+            }
+            try (OutputStream entry = out.openEntry("word/media/large.bin")) {
+                entry.write(large);
+            }
+            try (OutputStream entry = out.openEntry(DocumentPackage.RELATIONS_PART)) {
+                entry.write(small);
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        entries.put("word/media/large.bin", large);
+        entries.put(DocumentPackage.RELATIONS_PART, small);
+
+        try (ZipFile zipFile = new ZipFile(target.toFile())) {
+            List<String> names = new ArrayList<>();
+            for (ZipEntry entry : zipFile.stream().toArray(ZipEntry[]::new)) {
+                names.add(entry.getName());
+                try (InputStream in = zipFile.getInputStream(entry)) {
+                    assertArrayEquals(entries.get(entry.getName()), in.readAllBytes(), entry.getName());
+                }
+            }
+            assertEquals(new ArrayList<>(entries.keySet()), names);
+        }
+
+        // local headers and data descriptors must hold up for readers that never look at the central directory
+        try (ZipInputStream in = new ZipInputStream(Files.newInputStream(target))) {
+            int count = 0;
+            for (ZipEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+                assertArrayEquals(entries.get(entry.getName()), in.readAllBytes(), entry.getName());
+                count++;
+            }
+            assertEquals(entries.size(), count);
+        }
+    }
+
+    @Test
+    void centralDirectoryListsEveryEntry() throws Exception {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("a.xml", TestDocuments.utf8("<a/>"));
+        entries.put("word/media/stored.png", TestDocuments.PNG);
+        Path source = folder.resolve("source.zip");
+        writeSource(source, entries);
+
+        List<CentralRecord> records = RawZipWriter.readCentralDirectory(source);
+
+        assertEquals(Arrays.asList("a.xml", "word/media/stored.png"), Arrays.asList(records.get(0).getName(), records.get(1).getName()));
+        assertEquals(TestDocuments.PNG.length, records.get(1).getSize());
+        assertEquals(TestDocuments.PNG.length, records.get(1).getCompressedSize());
+    }
+
+    @Test
+    void onlyOneEntryIsOpenAtATime() throws Exception {
+        try (RawZipWriter out = new RawZipWriter(OutputStream.nullOutputStream())) {
+            OutputStream entry = out.openEntry("a.xml");
+            assertThrows(IllegalStateException.class, () -> out.openEntry("b.xml"));
+            entry.close();
+        }
+    }
+
+    @Test
+    void dosTimeKeepsEvenSeconds() {
+        int dosTime = RawZipWriter.toDosTime(LocalDateTime.of(2024, 2, 29, 13, 45, 31));
+
+        assertEquals(2024 - 1980, dosTime >>> 25);
+        assertEquals(2, (dosTime >>> 21) & 0xf);
+        assertEquals(29, (dosTime >>> 16) & 0x1f);
+        assertEquals(13, (dosTime >>> 11) & 0x1f);
+        assertEquals(45, (dosTime >>> 5) & 0x3f);
+        assertEquals(15, dosTime & 0x1f);
+    }
+
+    private static void writeSource(Path path, Map<String, byte[]> entries) throws Exception {
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(path))) {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                ZipEntry zipEntry = new ZipEntry(entry.getKey());
+                if (entry.getKey().endsWith("stored.png")) {
+                    CRC32 crc = new CRC32();
+                    crc.update(entry.getValue());
+                    zipEntry.setMethod(ZipEntry.STORED);
+                    zipEntry.setSize(entry.getValue().length);
+                    zipEntry.setCrc(crc.getValue());
+                }
+                out.putNextEntry(zipEntry);
+                out.write(entry.getValue());
+                out.closeEntry();
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package ninckblokje.document;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RepairJournalTest {
+
+    @TempDir
+    Path folder;
+
+    private Path journalPath;
+    private Path packagePath;
+    private Path target;
+    private Path logo;
+    private Path banner;
+
+    @BeforeEach
+    void paths() {
+        journalPath = folder.resolve("repair.journal");
+        packagePath = folder.resolve("input.docx");
+        target = folder.resolve("output.docx");
+        logo = folder.resolve("missing/logo.png");
+        banner = folder.resolve("missing/banner.png");
+    }
+
+    @Test
+    void completedPlanIsReplayed() throws Exception {
+        writePlan(true);
+
+        try (RepairJournal journal = RepairJournal.open(journalPath, packagePath, target)) {
+            assertTrue(journal.isResuming());
+            assertFalse(journal.isCommitted());
+            assertEquals(2, journal.getPlacementCount());
+            assertEquals(2, journal.getImagesAdded());
+
+            journal.part(DocumentPackage.DOCUMENT_PART);
+            MediaTransfer mediaTransfer = new MediaTransfer(journal);
+            List<ImmutablePair<RId, String>> newRelationships = new ArrayList<>();
+
+            RId logoRId = journal.replay(logo, mediaTransfer, new MediaDigestIndex(), (rId, media) -> newRelationships.add(ImmutablePair.of(rId, media)));
+            RId bannerRId = journal.replay(banner, mediaTransfer, new MediaDigestIndex(), (rId, media) -> newRelationships.add(ImmutablePair.of(rId, media)));
+
+            assertEquals("rId20", logoRId.getrId());
+            assertEquals("rId3", bannerRId.getrId());
+            assertEquals(1, newRelationships.size());
+            assertEquals("rId20", newRelationships.get(0).getLeft().getrId());
+            assertEquals("media/image5.png", newRelationships.get(0).getRight());
+            // the copy of image5 finished before the crash, it is not planned again
+            assertTrue(mediaTransfer.getTransfers().isEmpty());
+        }
+    }
+
+    @Test
+    void unfinishedCopyIsPlannedAgain() throws Exception {
+        writePlan(false);
+
+        try (RepairJournal journal = RepairJournal.open(journalPath, packagePath, target)) {
+            journal.part(DocumentPackage.DOCUMENT_PART);
+            MediaTransfer mediaTransfer = new MediaTransfer(journal);
+
+            journal.replay(logo, mediaTransfer, new MediaDigestIndex(), (rId, media) -> {
+            });
+
+            assertEquals(Collections.singletonList(ImmutablePair.of(logo, "word/media/image5.png")), mediaTransfer.getTransfers());
+        }
+    }
+
+    @Test
+    void savedRelationIsNotAddedTwice() throws Exception {
+        writePlan(true);
+        MediaDigestIndex mediaDigestIndex = new MediaDigestIndex().forRelations(Collections.singletonMap("rId20", "media/image5.png"));
+
+        try (RepairJournal journal = RepairJournal.open(journalPath, packagePath, target)) {
+            journal.part(DocumentPackage.DOCUMENT_PART);
+            List<RId> added = new ArrayList<>();
+
+            journal.replay(logo, new MediaTransfer(journal), mediaDigestIndex, (rId, media) -> added.add(rId));
+
+            assertTrue(added.isEmpty());
+        }
+    }
+
+    @Test
+    void placementsOfOtherPartsAreNotReplayed() throws Exception {
+        writePlan(true);
+
+        try (RepairJournal journal = RepairJournal.open(journalPath, packagePath, target)) {
+            journal.part("word/header1.xml");
+
+            assertNull(journal.replay(logo, new MediaTransfer(journal), new MediaDigestIndex(), (rId, media) -> {
+            }));
+        }
+    }
+
+    @Test
+    void partialPlanStartsOver() throws Exception {
+        try (RepairJournal journal = RepairJournal.open(journalPath, packagePath, target)) {
+            journal.part(DocumentPackage.DOCUMENT_PART);
+            journal.placed(logo, new RId("rId20"), "media/image5.png", "word/media/image5.png", true);
+        }
+
+        try (RepairJournal journal = RepairJournal.open(journalPath, packagePath, target)) {
+            assertFalse(journal.isResuming());
+            assertEquals(0, journal.getPlacementCount());
+        }
+        assertEquals(1, Files.readAllLines(journalPath, StandardCharsets.UTF_8).size());
+    }
+
+    @Test
+    void journalOfAnotherRunIsRejected() throws Exception {
+        writePlan(true);
+
+        assertThrows(IllegalArgumentException.class, () -> RepairJournal.open(journalPath, packagePath, folder.resolve("elsewhere.docx")));
+    }
+
+    @Test
+    void completeRemovesJournal() throws Exception {
+        RepairJournal journal = RepairJournal.open(journalPath, packagePath, target);
+        journal.committed();
+        journal.complete();
+
+        assertFalse(Files.exists(journalPath));
+    }
+
+    private void writePlan(boolean copied) throws Exception {
+        try (RepairJournal journal = RepairJournal.open(journalPath, packagePath, target)) {
+            journal.part(DocumentPackage.DOCUMENT_PART);
+            journal.placed(logo, new RId("rId20"), "media/image5.png", "word/media/image5.png", true);
+            journal.placed(banner, new RId("rId3"), "media/image1.png", null, false);
+            journal.planned(2);
+            if (copied) {
+                journal.copied("word/media/image5.png");
+            }
+        }
+        // a crash in the middle of a write leaves a record without its line end
+        Files.writeString(journalPath, "COPIED\tword/med", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+    }
+}
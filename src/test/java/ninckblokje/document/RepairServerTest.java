@@ -0,0 +1,133 @@
+package ninckblokje.document;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RepairServerTest {
+
+    @TempDir
+    Path folder;
+
+    private RepairServer server;
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @BeforeEach
+    void startServer() throws Exception {
+        RepairOptions options = new RepairOptions();
+        options.setThreads(1);
+        options.setDeflateThreads(1);
+        server = new RepairServer(options, true, 16L * 1024 * 1024);
+        server.start(0);
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop();
+    }
+
+    @Test
+    void repairsUploadedBundle() throws Exception {
+        Map<String, byte[]> parts = new LinkedHashMap<>();
+        parts.put(ContentTypes.CONTENT_TYPES_PART, TestDocuments.utf8(TestDocuments.contentTypes()));
+        parts.put(DocumentPackage.DOCUMENT_PART, TestDocuments.utf8(TestDocuments.document(TestDocuments.picture(1, "logo.png", "rId7"))));
+        parts.put(DocumentPackage.RELATIONS_PART, TestDocuments.utf8(TestDocuments.relationships()));
+        Path document = folder.resolve("input.docx");
+        TestDocuments.writePackage(document, parts);
+
+        Map<String, byte[]> bundle = new LinkedHashMap<>();
+        bundle.put("input.docx", Files.readAllBytes(document));
+        bundle.put("logo.png", TestDocuments.PNG);
+
+        HttpResponse<byte[]> response = post(zip(bundle));
+
+        assertEquals(200, response.statusCode());
+        assertEquals(RepairServer.DOCX_CONTENT_TYPE, response.headers().firstValue("Content-Type").orElse(null));
+        assertEquals("1", response.headers().firstValue("X-Images-Added").orElse(null));
+    }
+
+    @Test
+    void failedRepairGetsGenericError() throws Exception {
+        Map<String, byte[]> bundle = new LinkedHashMap<>();
+        bundle.put("input.docx", TestDocuments.utf8("not a zip file"));
+
+        HttpResponse<byte[]> response = post(zip(bundle));
+
+        assertEquals(500, response.statusCode());
+        assertEquals("Repair failed", new String(response.body()));
+    }
+
+    @Test
+    void bundleWithoutDocumentIsRejected() throws Exception {
+        Map<String, byte[]> bundle = new LinkedHashMap<>();
+        bundle.put("logo.png", TestDocuments.PNG);
+
+        assertEquals(400, post(zip(bundle)).statusCode());
+    }
+
+    @Test
+    void bundleWithEntriesWithoutFileNameIsRejected() throws Exception {
+        for (String name : new String[]{"", "..", "images/.."}) {
+            Map<String, byte[]> bundle = new LinkedHashMap<>();
+            bundle.put("input.docx", TestDocuments.utf8("not read"));
+            bundle.put(name, TestDocuments.PNG);
+
+            HttpResponse<byte[]> response = post(zip(bundle));
+
+            assertEquals(400, response.statusCode(), name);
+            assertEquals(String.format("Upload is not a valid bundle: Entry '%s' has no file name", name), new String(response.body()));
+        }
+    }
+
+    @Test
+    void fileNameOfEntryIsKept() {
+        assertEquals("logo.png", RepairServer.getFileName("images/logo.png"));
+        assertEquals("logo.png", RepairServer.getFileName("../logo.png"));
+        assertThrows(IllegalArgumentException.class, () -> RepairServer.getFileName("/"));
+        assertThrows(IllegalArgumentException.class, () -> RepairServer.getFileName("."));
+    }
+
+    @Test
+    void onlyPostIsSupported() throws Exception {
+        HttpResponse<byte[]> response = client.send(HttpRequest.newBuilder(uri("/repair")).GET().build(), HttpResponse.BodyHandlers.ofByteArray());
+
+        assertEquals(405, response.statusCode());
+    }
+
+    private HttpResponse<byte[]> post(byte[] body) throws Exception {
+        return client.send(HttpRequest.newBuilder(uri("/repair")).POST(HttpRequest.BodyPublishers.ofByteArray(body)).build(),
+                HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + server.getPort() + path);
+    }
+
+    private static byte[] zip(Map<String, byte[]> entries) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                out.putNextEntry(new ZipEntry(entry.getKey()));
+                out.write(entry.getValue());
+                out.closeEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,102 @@
+package ninckblokje.document;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StreamingRewriterTest {
+
+    @Test
+    void rewriteReplacesPlaceholderEmbeds() throws Exception {
+        String body = TestDocuments.picture(1, "logo.png", "rId7") + TestDocuments.picture(2, "other.png", "rId7") + TestDocuments.picture(3, "logo.png", "rId7");
+        Map<String, Deque<RId>> replacements = new HashMap<>();
+        replacements.put("logo.png", new ArrayDeque<>(Arrays.asList(new RId("rId20"), new RId("rId21"))));
+
+        String rewritten = rewriteDocument(TestDocuments.document(body), replacements, 2);
+
+        DocumentScan scan = DocumentScanner.scan(new ByteArrayInputStream(TestDocuments.utf8(rewritten)));
+        assertEquals(Arrays.asList("rId20", "rId7", "rId21"), scan.getEmbeddedRelationIds());
+    }
+
+    @Test
+    void rewriteKeepsEmptyElementsAndDeclaration() throws Exception {
+        String document = TestDocuments.document(TestDocuments.paragraph("a &amp; b") + "<w:p><w:pPr><w:spacing w:after=\"0\"/></w:pPr></w:p><w:p></w:p>");
+
+        String rewritten = rewriteDocument(document, Collections.emptyMap(), 0);
+
+        assertTrue(rewritten.startsWith("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"));
+        assertTrue(rewritten.contains("<w:spacing w:after=\"0\"/>"));
+        assertTrue(rewritten.contains("<w:p/>"));
+        assertTrue(rewritten.contains("<w:sectPr/>"));
+        assertTrue(rewritten.contains("<w:t>a &amp; b</w:t>"));
+        assertFalse(rewritten.contains("<w:p></w:p>"));
+    }
+
+    @Test
+    void rewriteRelationsAppendsRelationships() throws Exception {
+        String relationships = TestDocuments.relationships(TestDocuments.relationship("rId1", "media/image1.png"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        StreamingRewriter.rewriteRelations(new ByteArrayInputStream(TestDocuments.utf8(relationships)), out,
+                Collections.singletonList(ImmutablePair.of(new RId("rId2"), "media/image2.png")));
+
+        String rewritten = out.toString(StandardCharsets.UTF_8);
+        assertFalse(rewritten.contains("</Relationship>"));
+        Map<String, String> relations = StreamingRewriter.readRelations(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(2, relations.size());
+        assertEquals("media/image2.png", relations.get("rId2"));
+    }
+
+    @Test
+    void rewriteEscapesWhitespaceInAttributes() throws Exception {
+        String document = TestDocuments.document("<w:p><wp:docPr id=\"1\" name=\"a &lt; b\" descr=\"line1&#xA;line2&#x9;tab&#xD;&quot;\"/></w:p>");
+
+        String rewritten = rewriteDocument(document, Collections.emptyMap(), 0);
+
+        assertTrue(rewritten.contains("<wp:docPr id=\"1\" name=\"a &lt; b\" descr=\"line1&#xA;line2&#x9;tab&#xD;&quot;\"/>"));
+        assertEquals(rewritten, rewriteDocument(rewritten, Collections.emptyMap(), 0));
+    }
+
+    @Test
+    void rewriteKeepsAttributeOrder() throws Exception {
+        String body = TestDocuments.picture(1, "logo.png", "rId7").replace("<a:blip r:embed=\"rId7\"/>", "<a:blip r:embed=\"rId7\" cstate=\"print\" a:alpha=\"1\"/>");
+        Map<String, Deque<RId>> replacements = new HashMap<>();
+        replacements.put("logo.png", new ArrayDeque<>(Collections.singletonList(new RId("rId20"))));
+
+        String rewritten = rewriteDocument(TestDocuments.document(body), replacements, 1);
+
+        assertTrue(rewritten.contains("<a:blip r:embed=\"rId20\" cstate=\"print\" a:alpha=\"1\"/>"));
+        assertTrue(rewritten.contains("<pic:cNvPr id=\"1\" name=\"logo.png\"/>"));
+    }
+
+    @Test
+    void rewriteRelationsKeepsAttributeOrder() throws Exception {
+        String relationships = TestDocuments.relationships(TestDocuments.relationship("rId1", "media/image1.png"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        StreamingRewriter.rewriteRelations(new ByteArrayInputStream(TestDocuments.utf8(relationships)), out,
+                Collections.singletonList(ImmutablePair.of(new RId("rId2"), "media/image2.png")));
+
+        String rewritten = out.toString(StandardCharsets.UTF_8);
+        assertTrue(rewritten.contains(TestDocuments.relationship("rId1", "media/image1.png") + TestDocuments.relationship("rId2", "media/image2.png")));
+    }
+
+    private static String rewriteDocument(String document, Map<String, Deque<RId>> replacements, int expected) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(expected, StreamingRewriter.rewriteDocument(new ByteArrayInputStream(TestDocuments.utf8(document)), out, "rId7", replacements));
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,103 @@
+package ninckblokje.document;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+class TestDocuments {
+
+    static final String NAMESPACES = "xmlns:w=\"http://schemas.openxmlformats.org/wordprocessingml/2006/main\""
+            + " xmlns:r=\"" + DocumentScanner.RELATIONSHIPS_NS + "\""
+            + " xmlns:a=\"" + DocumentScanner.DRAWINGML_NS + "\""
+            + " xmlns:pic=\"" + DocumentScanner.PICTURE_NS + "\""
+            + " xmlns:wp=\"" + DocumentScanner.WORDPROCESSING_DRAWING_NS + "\""
+            + " xmlns:wps=\"http://schemas.microsoft.com/office/word/2010/wordprocessingShape\"";
+
+    static final String IMAGE_TYPE = "http://schemas.openxmlformats.org/officeDocument/2006/relationships/image";
+
+    static final byte[] PNG = png(64, 32);
+
+    static String picture(int id, String name, String relationId) {
+        return String.format("<w:p><w:r><w:drawing><wp:inline><wp:extent cx=\"1080000\" cy=\"720000\"/>"
+                + "<a:graphic><a:graphicData uri=\"%s\"><pic:pic><pic:nvPicPr><pic:cNvPr id=\"%d\" name=\"%s\"/><pic:cNvPicPr/></pic:nvPicPr>"
+                + "<pic:blipFill><a:blip r:embed=\"%s\"/></pic:blipFill></pic:pic></a:graphicData></a:graphic></wp:inline></w:drawing></w:r></w:p>",
+                DocumentScanner.PICTURE_NS, id, name, relationId);
+    }
+
+    static String paragraph(String text) {
+        return String.format("<w:p><w:r><w:t>%s</w:t></w:r></w:p>", text);
+    }
+
+    static String document(String body) {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n<w:document " + NAMESPACES + "><w:body>" + body + "<w:sectPr/></w:body></w:document>";
+    }
+
+    static String relationships(String... relationships) {
+        StringBuilder builder = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+                + "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">");
+        for (String relationship : relationships) {
+            builder.append(relationship);
+        }
+        return builder.append("</Relationships>").toString();
+    }
+
+    static String relationship(String id, String target) {
+        return String.format("<Relationship Id=\"%s\" Type=\"%s\" Target=\"%s\"/>", id, IMAGE_TYPE, target);
+    }
+
+    static String contentTypes() {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+                + "<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">"
+                + "<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>"
+                + "<Default Extension=\"xml\" ContentType=\"application/xml\"/>"
+                + "<Default Extension=\"png\" ContentType=\"image/png\"/>"
+                + "<Override PartName=\"/word/document.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.wordprocessingml.document.main+xml\"/>"
+                + "</Types>";
+    }
+
+    static byte[] png(int width, int height) {
+        byte[] png = new byte[33];
+        System.arraycopy(new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n', 0, 0, 0, 13, 'I', 'H', 'D', 'R'}, 0, png, 0, 16);
+        writeInt(png, 16, width);
+        writeInt(png, 20, height);
+        png[24] = 8;
+        png[25] = 2;
+        return png;
+    }
+
+    static void writePackage(Path target, Map<String, byte[]> parts) throws IOException {
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(target))) {
+            for (Map.Entry<String, byte[]> part : parts.entrySet()) {
+                out.putNextEntry(new ZipEntry(part.getKey()));
+                out.write(part.getValue());
+                out.closeEntry();
+            }
+        }
+    }
+
+    static void writeFolder(Path root, Map<String, byte[]> parts) throws IOException {
+        for (Map.Entry<String, byte[]> part : parts.entrySet()) {
+            Path file = root.resolve(part.getKey());
+            Files.createDirectories(file.getParent());
+            try (OutputStream out = Files.newOutputStream(file)) {
+                out.write(part.getValue());
+            }
+        }
+    }
+
+    static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void writeInt(byte[] data, int offset, int value) {
+        data[offset] = (byte) (value >>> 24);
+        data[offset + 1] = (byte) (value >>> 16);
+        data[offset + 2] = (byte) (value >>> 8);
+        data[offset + 3] = (byte) value;
+    }
+}
@@ -0,0 +1,62 @@
+package ninckblokje.document;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class WatchRepairTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void batchAppliedTwiceDoesNotDuplicateMedia() throws Exception {
+        Path missingImages = Files.createDirectories(folder.resolve("missing"));
+        Path logo = Files.write(missingImages.resolve("logo.png"), TestDocuments.PNG);
+        Path copy = Files.write(missingImages.resolve("copy.png"), TestDocuments.PNG);
+
+        Path root = folder.resolve("document");
+        Map<String, byte[]> parts = new LinkedHashMap<>();
+        parts.put(ContentTypes.CONTENT_TYPES_PART, TestDocuments.utf8(TestDocuments.contentTypes()));
+        parts.put(DocumentPackage.DOCUMENT_PART, TestDocuments.utf8(TestDocuments.document(
+                TestDocuments.picture(1, "logo.png", "rId7") + TestDocuments.picture(2, "copy.png", "rId7") + TestDocuments.picture(3, "logo.png", "rId7"))));
+        parts.put(DocumentPackage.RELATIONS_PART, TestDocuments.utf8(TestDocuments.relationships(TestDocuments.relationship("rId1", "media/image1.png"))));
+        parts.put("word/media/image1.png", TestDocuments.png(10, 10));
+        TestDocuments.writeFolder(root, parts);
+
+        RepairOptions options = new RepairOptions();
+        options.setMissingImagesFolder(missingImages);
+        options.setDoneFolder(null);
+        options.setThreads(1);
+        options.setDeflateThreads(1);
+
+        try (DocumentPackage documentPackage = DocumentPackage.open(root)) {
+            WatchRepair watchRepair = new WatchRepair(documentPackage, options, null, 0);
+            watchRepair.open();
+
+            assertEquals(2, watchRepair.applyBatch(Collections.singletonList(logo)));
+            assertEquals(0, watchRepair.applyBatch(Collections.singletonList(logo)));
+            // the same content arriving under another name reuses the relationship of the first batch
+            assertEquals(1, watchRepair.applyBatch(Arrays.asList(logo, copy)));
+            assertEquals(0, watchRepair.getMissingImageCount());
+        }
+
+        assertEquals(Arrays.asList("rId8", "rId8", "rId8"), DocumentScanner.scan(root.resolve(DocumentPackage.DOCUMENT_PART)).getEmbeddedRelationIds());
+        try (InputStream in = Files.newInputStream(root.resolve(DocumentPackage.RELATIONS_PART))) {
+            assertEquals(2, StreamingRewriter.readRelations(in).size());
+        }
+        try (Stream<Path> media = Files.list(root.resolve(DocumentPackage.MEDIA_FOLDER))) {
+            assertEquals(2, media.count());
+        }
+    }
+}
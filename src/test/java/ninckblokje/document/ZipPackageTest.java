@@ -0,0 +1,95 @@
+package ninckblokje.document;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class ZipPackageTest {
+
+    @TempDir
+    Path folder;
+
+    private Path source;
+
+    @BeforeEach
+    void writePackage() throws Exception {
+        assumeTrue(Files.getFileStore(folder).supportsFileAttributeView(PosixFileAttributeView.class));
+
+        Map<String, byte[]> parts = new LinkedHashMap<>();
+        parts.put(ContentTypes.CONTENT_TYPES_PART, TestDocuments.utf8(TestDocuments.contentTypes()));
+        parts.put(DocumentPackage.DOCUMENT_PART, TestDocuments.utf8(TestDocuments.document(TestDocuments.picture(1, "logo.png", "rId7"))));
+        parts.put(DocumentPackage.RELATIONS_PART, TestDocuments.utf8(TestDocuments.relationships()));
+        source = folder.resolve("source.docx");
+        TestDocuments.writePackage(source, parts);
+    }
+
+    @Test
+    void commitToNewFileIsNotOwnerOnly() throws Exception {
+        Path target = folder.resolve("target.docx");
+        try (ZipPackage documentPackage = new ZipPackage(source)) {
+            documentPackage.addPart("word/media/image1.png", writeMedia());
+            documentPackage.commit(target, new RepairOptions());
+        }
+
+        assertNotEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(target)));
+        assertEquals(0, countTempFiles());
+    }
+
+    @Test
+    void commitOverExistingFileKeepsPermissions() throws Exception {
+        Path target = folder.resolve("target.docx");
+        Files.copy(source, target);
+        Files.setPosixFilePermissions(target, PosixFilePermissions.fromString("rw-r-----"));
+
+        try (ZipPackage documentPackage = new ZipPackage(source)) {
+            documentPackage.addPart("word/media/image1.png", writeMedia());
+            documentPackage.commit(target, new RepairOptions());
+        }
+
+        assertEquals("rw-r-----", PosixFilePermissions.toString(Files.getPosixFilePermissions(target)));
+    }
+
+    @Test
+    void commitTwiceReadsFromFirstCommit() throws Exception {
+        Path target = folder.resolve("target.docx");
+        try (ZipPackage documentPackage = new ZipPackage(source)) {
+            documentPackage.addPart("word/media/image1.png", writeMedia());
+            documentPackage.commit(target, new RepairOptions());
+            documentPackage.addPart("word/media/image2.png", writeMedia());
+            documentPackage.commit(target, new RepairOptions());
+        }
+
+        try (ZipPackage committed = new ZipPackage(target)) {
+            assertEquals(5, committed.listParts().size());
+            try (InputStream in = committed.openPart(DocumentPackage.DOCUMENT_PART)) {
+                assertEquals(TestDocuments.document(TestDocuments.picture(1, "logo.png", "rId7")), new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    private Path writeMedia() throws Exception {
+        Path media = Files.createTempFile(folder, "media", ".png");
+        Files.write(media, TestDocuments.PNG);
+        return media;
+    }
+
+    private long countTempFiles() throws Exception {
+        try (Stream<Path> files = Files.list(folder)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".tmp")).count();
+        }
+    }
+}